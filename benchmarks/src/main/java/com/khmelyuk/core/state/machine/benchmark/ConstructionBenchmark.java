@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine.benchmark;
+
+import com.khmelyuk.core.state.machine.State;
+import com.khmelyuk.core.state.machine.StateMachine;
+import com.khmelyuk.core.state.machine.StateMachineBuilder;
+import com.khmelyuk.core.state.machine.StateMachineDefinition;
+import com.khmelyuk.core.state.machine.StateMachineInstance;
+import com.khmelyuk.core.state.machine.Transition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of building the state machine of the chain of states,
+ * and the cost of creating the instance of the shared definition.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class ConstructionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int states;
+
+    private StateMachineDefinition definition;
+
+    @Setup
+    public void setUp() {
+        definition = buildWithBuilder().buildDefinition();
+    }
+
+    @Benchmark
+    public StateMachine stateMachine() {
+        StateMachine machine = new StateMachine(states);
+        State previous = machine.addState(new State(0));
+        for (int i = 1; i < states; i++) {
+            State state = machine.addState(new State(i));
+            machine.addTransition(previous, state, new Transition(new EqualsCondition("next")));
+            previous = state;
+        }
+        machine.setInitialState(machine.getStates().iterator().next());
+        return machine;
+    }
+
+    @Benchmark
+    public StateMachineBuilder builder() {
+        return buildWithBuilder();
+    }
+
+    @Benchmark
+    public StateMachineDefinition definition() {
+        return buildWithBuilder().buildDefinition();
+    }
+
+    @Benchmark
+    public StateMachineInstance instance() {
+        StateMachineInstance instance = definition.newInstance();
+        instance.start();
+        return instance;
+    }
+
+    private StateMachineBuilder buildWithBuilder() {
+        StateMachineBuilder builder = new StateMachineBuilder(states);
+        State first = builder.addState(new State(0));
+        State previous = first;
+        for (int i = 1; i < states; i++) {
+            State state = builder.addState(new State(i));
+            builder.addTransition(previous, state, new Transition(new EqualsCondition("next")));
+            previous = state;
+        }
+        builder.setInitialState(first);
+        return builder;
+    }
+}
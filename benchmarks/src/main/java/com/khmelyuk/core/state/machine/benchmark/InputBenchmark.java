@@ -0,0 +1,103 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine.benchmark;
+
+import com.khmelyuk.core.state.machine.State;
+import com.khmelyuk.core.state.machine.StateMachine;
+import com.khmelyuk.core.state.machine.StateMachineInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of the input for states with different number of transitions
+ * and different position of the else transition. Each operation is two inputs:
+ * from the hub state to the leaf state and back.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class InputBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    @Param({"2", "10", "100", "1000"})
+    public int fanOut;
+
+    @Param({"NONE", "FIRST", "LAST"})
+    public Machines.ElsePlacement elsePlacement;
+
+    private StateMachine machine;
+    private StateMachine compiledMachine;
+    private StateMachineInstance instance;
+    private String[] events;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        machine = Machines.createHubMachine(fanOut, elsePlacement);
+        machine.start();
+
+        compiledMachine = Machines.createHubMachine(fanOut, elsePlacement);
+        compiledMachine.compile();
+        compiledMachine.start();
+
+        instance = Machines.createHubMachine(fanOut, elsePlacement).createDefinition().newInstance();
+        instance.start();
+
+        events = Machines.createEvents(fanOut, EVENTS);
+    }
+
+    private String nextEvent() {
+        String event = events[position];
+        position = (position + 1) & (EVENTS - 1);
+        return event;
+    }
+
+    @Benchmark
+    public State stateMachine() {
+        machine.input(nextEvent());
+        return machine.input(Machines.BACK);
+    }
+
+    @Benchmark
+    public State compiledStateMachine() {
+        compiledMachine.input(nextEvent());
+        return compiledMachine.input(Machines.BACK);
+    }
+
+    @Benchmark
+    public State definitionInstance() {
+        instance.input(nextEvent());
+        return instance.input(Machines.BACK);
+    }
+}
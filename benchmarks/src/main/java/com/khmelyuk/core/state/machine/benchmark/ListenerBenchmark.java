@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine.benchmark;
+
+import com.khmelyuk.core.state.machine.StateChangeListener;
+import com.khmelyuk.core.state.machine.StateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of listener notification for different number of listeners,
+ * added for all transitions or scoped to the state that is not entered by the benchmark input.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListenerBenchmark {
+
+    private static final int FAN_OUT = 10;
+    private static final int EVENTS = 1024;
+
+    public enum ListenerScope {
+        GLOBAL, ENTER_STATE
+    }
+
+    @Param({"0", "1", "10", "50"})
+    public int listeners;
+
+    @Param({"GLOBAL", "ENTER_STATE"})
+    public ListenerScope scope;
+
+    private StateMachine machine;
+    private String[] events;
+    private int position;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        machine = Machines.createHubMachine(FAN_OUT, Machines.ElsePlacement.NONE);
+        com.khmelyuk.core.state.machine.State rare = null;
+        for (com.khmelyuk.core.state.machine.State each : machine.getStates()) {
+            if (each.getState().equals("other")) {
+                rare = each;
+            }
+        }
+
+        for (int i = 0; i < listeners; i++) {
+            StateChangeListener listener = new StateChangeListener() {
+                public void onChange(com.khmelyuk.core.state.machine.State fromState,
+                                     com.khmelyuk.core.state.machine.State toState) {
+                    blackhole.consume(toState);
+                }
+            };
+            if (scope == ListenerScope.GLOBAL) {
+                machine.addStateChangeListener(listener);
+            }
+            else {
+                machine.addStateEnterListener(rare, listener);
+            }
+        }
+        machine.compile();
+        machine.start();
+
+        events = Machines.createEvents(FAN_OUT, EVENTS);
+    }
+
+    @Benchmark
+    public Object input() {
+        machine.input(events[position]);
+        position = (position + 1) & (EVENTS - 1);
+        return machine.input(Machines.BACK);
+    }
+}
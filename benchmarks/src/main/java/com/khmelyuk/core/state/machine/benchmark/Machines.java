@@ -0,0 +1,97 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine.benchmark;
+
+import com.khmelyuk.core.state.machine.State;
+import com.khmelyuk.core.state.machine.StateMachine;
+import com.khmelyuk.core.state.machine.Transition;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+/**
+ * The state machines used by benchmarks.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class Machines {
+
+    /**
+     * The input that returns the state machine from any leaf state to the hub state.
+     */
+    static final String BACK = "back";
+
+    /**
+     * The position of the else transition of the hub state.
+     */
+    public enum ElsePlacement {
+        NONE, FIRST, LAST
+    }
+
+    private Machines() {
+    }
+
+    /**
+     * Creates the state machine with the hub state, that has the transition to its
+     * own leaf state for each of {@code fanOut} events, and leaf states go back to the hub.
+     *
+     * @param fanOut the number of transitions of the hub state.
+     * @param elsePlacement where to add the else transition of the hub state.
+     * @return the new state machine.
+     */
+    static StateMachine createHubMachine(int fanOut, ElsePlacement elsePlacement) {
+        StateMachine machine = new StateMachine(fanOut + 2);
+        State hub = machine.addState(new State("hub"));
+        State other = machine.addState(new State("other"));
+
+        if (elsePlacement == ElsePlacement.FIRST) {
+            machine.addTransition(hub, other, new Transition(new ElseCondition()));
+        }
+        for (int i = 0; i < fanOut; i++) {
+            State leaf = machine.addState(new State("leaf" + i));
+            machine.addTransition(hub, leaf, new Transition(new EqualsCondition(event(i))));
+            machine.addTransition(leaf, hub, new Transition(new EqualsCondition(BACK)));
+        }
+        if (elsePlacement == ElsePlacement.LAST) {
+            machine.addTransition(hub, other, new Transition(new ElseCondition()));
+        }
+        machine.addTransition(other, hub, new Transition(new EqualsCondition(BACK)));
+
+        machine.setInitialState(hub);
+        machine.addAcceptableState(hub);
+        return machine;
+    }
+
+    static String event(int index) {
+        return "event" + index;
+    }
+
+    /**
+     * Creates the events that go to the leaf states, spread over all transitions of the hub.
+     *
+     * @param fanOut the number of transitions of the hub state.
+     * @param count the number of events.
+     * @return the events.
+     */
+    static String[] createEvents(int fanOut, int count) {
+        String[] events = new String[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = event((int) ((i * 2654435761L) % fanOut));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine.benchmark;
+
+import com.khmelyuk.core.state.machine.StateMachine;
+import com.khmelyuk.core.state.machine.StateMachineDefinition;
+import com.khmelyuk.core.state.machine.StateMachineInstance;
+import com.khmelyuk.core.state.machine.StateMachineSnapshot;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time and size of the state machine serialization: the default Java serialization
+ * of the whole state machine compared with the compact snapshot of the instance.
+ * The serialized size is reported as the {@code bytes} secondary result.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"10", "100"})
+    public int fanOut;
+
+    private StateMachine machine;
+    private StateMachineDefinition definition;
+    private StateMachineInstance instance;
+    private byte[] serializedMachine;
+    private byte[] serializedSnapshot;
+
+    /**
+     * The serialized size, reported per operation.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        machine = Machines.createHubMachine(fanOut, Machines.ElsePlacement.LAST);
+        machine.start();
+        machine.input(Machines.event(0));
+
+        definition = Machines.createHubMachine(fanOut, Machines.ElsePlacement.LAST).createDefinition();
+        instance = definition.newInstance();
+        instance.start();
+        instance.input(Machines.event(0));
+
+        serializedMachine = serialize(machine);
+        serializedSnapshot = StateMachineSnapshot.of(instance).toByteArray();
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeStateMachine(Size size) throws IOException {
+        byte[] result = serialize(machine);
+        size.bytes += result.length;
+        return result;
+    }
+
+    @Benchmark
+    public Object deserializeStateMachine() throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(serializedMachine)).readObject();
+    }
+
+    @Benchmark
+    public byte[] serializeSnapshot(Size size) {
+        byte[] result = StateMachineSnapshot.of(instance).toByteArray();
+        size.bytes += result.length;
+        return result;
+    }
+
+    @Benchmark
+    public StateMachineInstance deserializeSnapshot() {
+        return StateMachineSnapshot.fromByteArray(serializedSnapshot).restore(definition);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.flow;
+
+/**
+ * The producer of items for subscribers, that sends items only when
+ * they are requested by the subscriber. The same contract as
+ * {@code java.util.concurrent.Flow.Publisher} in Java 9.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public interface Publisher<T> {
+
+    /**
+     * Adds the subscriber. Publisher calls {@link Subscriber#onSubscribe(Subscription)}
+     * first, and then sends items as they are requested through the subscription.
+     * If subscriber can't be added, it gets {@link Subscriber#onError(Throwable)}.
+     *
+     * @param subscriber the subscriber.
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+
+}
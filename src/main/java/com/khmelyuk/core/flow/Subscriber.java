@@ -0,0 +1,56 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.flow;
+
+/**
+ * The receiver of items from {@link Publisher}. The same contract as
+ * {@code java.util.concurrent.Flow.Subscriber} in Java 9: the methods are called
+ * one at a time, and {@link #onNext(Object)} is called not more times
+ * than items were requested through the subscription.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public interface Subscriber<T> {
+
+    /**
+     * Called before any other method with the subscription to request items.
+     *
+     * @param subscription the subscription.
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Called with the next requested item.
+     *
+     * @param item the item.
+     */
+    void onNext(T item);
+
+    /**
+     * Called when publisher failed, no more items are sent after this.
+     *
+     * @param error the error.
+     */
+    void onError(Throwable error);
+
+    /**
+     * Called when publisher has no more items.
+     */
+    void onComplete();
+
+}
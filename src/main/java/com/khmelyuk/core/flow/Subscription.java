@@ -0,0 +1,43 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.flow;
+
+/**
+ * The link between {@link Publisher} and {@link Subscriber}, used by subscriber
+ * to request items and to cancel the subscription. The same contract as
+ * {@code java.util.concurrent.Flow.Subscription} in Java 9.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public interface Subscription {
+
+    /**
+     * Requests more items. If {@code n} is not positive,
+     * the subscriber gets {@link Subscriber#onError(Throwable)}
+     * with {@link IllegalArgumentException}.
+     *
+     * @param n the number of items to request.
+     */
+    void request(long n);
+
+    /**
+     * Cancels the subscription, so publisher stops sending items.
+     */
+    void cancel();
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.Identifiable;
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.code.Warnings;
+import com.khmelyuk.core.fp.Function;
+import com.khmelyuk.core.utils.ConcurrentUtils;
+import com.khmelyuk.core.utils.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Finds the difference between the old and new values by their keys:
+ * new values with keys that are not in old values are {@code ADDED},
+ * old values with keys that are not in new values are {@code REMOVED},
+ * and values with the same key are {@code UNMODIFIED} if they are equal
+ * and {@code MODIFIED} otherwise.
+ * <br/>
+ * Old values are indexed by key in the hash map, so the diff takes linear time.
+ * If executor is set, old values are indexed and new values are classified in parallel
+ * by the number of workers, each taking the next chunk of values using the shared atomic cursor;
+ * keys are put to the concurrent hash maps in this case, which also find duplicate keys.
+ * Key function and {@code equals()} of values must be thread-safe in this case.
+ * Only copying the values and collecting the result are serial.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyDiff<T, K> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 16 * 1024;
+
+    private static final byte ADDED = (byte) DirtyState.ADDED.ordinal();
+    private static final byte MODIFIED = (byte) DirtyState.MODIFIED.ordinal();
+    private static final byte UNMODIFIED = (byte) DirtyState.UNMODIFIED.ordinal();
+    private static final DirtyState[] STATES = DirtyState.values();
+
+    /**
+     * Replaces the null key, as concurrent hash map doesn't support null keys.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private final Function<? super T, ? extends K> keyFunction;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Creates the diff that classifies values in the calling thread.
+     *
+     * @param keyFunction the function that gets the key of value; can't be null.
+     */
+    public DirtyDiff(Function<? super T, ? extends K> keyFunction) {
+        ArgumentAssert.isNotNull(keyFunction, "Key function can't be null.");
+        this.keyFunction = keyFunction;
+        this.executor = null;
+        this.parallelism = 1;
+    }
+
+    /**
+     * Creates the diff that classifies large number of values in parallel.
+     *
+     * @param keyFunction the function that gets the key of value; can't be null.
+     * @param executor the executor to run workers; can't be null.
+     * @param parallelism the number of workers; must be positive.
+     */
+    public DirtyDiff(Function<? super T, ? extends K> keyFunction, ExecutorService executor, int parallelism) {
+        ArgumentAssert.isNotNull(keyFunction, "Key function can't be null.");
+        ArgumentAssert.isNotNull(executor, "Executor can't be null.");
+        ArgumentAssert.isTrue(parallelism > 0, "Parallelism must be positive.");
+
+        this.keyFunction = keyFunction;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the key function for identifiable values, that returns their ids.
+     *
+     * @return the key function.
+     */
+    public static <K> Function<Identifiable<K>, K> idFunction() {
+        return new Function<Identifiable<K>, K>() {
+            public K run(Identifiable<K> value) {
+                return value.getId();
+            }
+        };
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of values the worker takes at once.
+     *
+     * @param chunkSize the chunk size; must be positive.
+     */
+    public void setChunkSize(int chunkSize) {
+        ArgumentAssert.isTrue(chunkSize > 0, "Chunk size must be positive.");
+        this.chunkSize = chunkSize;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the minimal number of old values to index them in parallel,
+     * and the minimal number of new values to classify them in parallel.
+     *
+     * @param parallelThreshold the parallel threshold; can't be negative.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        ArgumentAssert.isTrue(parallelThreshold >= 0, "Parallel threshold can't be negative.");
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Finds the difference between old and new values.
+     * Keys must be unique within old values and within new values,
+     * otherwise {@code IllegalArgumentException} is thrown.
+     *
+     * @param oldValues the old values; can't be null.
+     * @param newValues the new values; can't be null.
+     * @return the list of new values with their states in order of new values,
+     *         followed by removed old values in order of old values.
+     * @throws InterruptedException if waiting thread was interrupted.
+     */
+    @SuppressWarnings(Warnings.Unchecked)
+    public List<DirtyWrapper<T>> diff(Collection<? extends T> oldValues, Collection<? extends T> newValues)
+            throws InterruptedException {
+
+        ArgumentAssert.isNotNull(oldValues, "Old values can't be null.");
+        ArgumentAssert.isNotNull(newValues, "New values can't be null.");
+
+        final Object[] olds = oldValues.toArray();
+        final Object[] news = newValues.toArray();
+
+        boolean parallelIndex = (executor != null && olds.length >= parallelThreshold);
+        final Map<Object, Integer> index = newKeyMap(olds.length, parallelIndex);
+        if (parallelIndex) {
+            ConcurrentUtils.processChunks(executor, parallelism, olds.length, chunkSize,
+                    new ConcurrentUtils.ChunkProcessor<Object>() {
+                        public Object createResult() {
+                            return null;
+                        }
+
+                        public void process(int start, int end, Object result) {
+                            index(index, olds, start, end);
+                        }
+                    });
+        }
+        else {
+            index(index, olds, 0, olds.length);
+        }
+
+        boolean parallelClassify = (executor != null && news.length >= parallelThreshold);
+        final Map<Object, Integer> newKeys = newKeyMap(news.length, parallelClassify);
+        final byte[] states = new byte[news.length];
+        final boolean[] matched = new boolean[olds.length];
+        if (parallelClassify) {
+            ConcurrentUtils.processChunks(executor, parallelism, news.length, chunkSize,
+                    new ConcurrentUtils.ChunkProcessor<Object>() {
+                        public Object createResult() {
+                            return null;
+                        }
+
+                        public void process(int start, int end, Object result) {
+                            classify(index, olds, news, newKeys, states, matched, start, end);
+                        }
+                    });
+        }
+        else {
+            classify(index, olds, news, newKeys, states, matched, 0, news.length);
+        }
+
+        List<DirtyWrapper<T>> result = new ArrayList<DirtyWrapper<T>>(news.length + olds.length);
+        for (int i = 0; i < news.length; i++) {
+            result.add(new DirtyWrapper<T>((T) news[i], STATES[states[i]]));
+        }
+        for (int i = 0; i < olds.length; i++) {
+            if (!matched[i]) {
+                result.add(new DirtyWrapper<T>((T) olds[i], DirtyState.REMOVED));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the difference between old and new values and splits them by states.
+     *
+     * @param oldValues the old values; can't be null.
+     * @param newValues the new values; can't be null.
+     * @return the values split by states; modified and unmodified values are new values.
+     * @throws InterruptedException if waiting thread was interrupted.
+     * @see #diff(java.util.Collection, java.util.Collection)
+     */
+    public DirtyPartition<T> partition(Collection<? extends T> oldValues, Collection<? extends T> newValues)
+            throws InterruptedException {
+
+        return DirtyUtils.partition(diff(oldValues, newValues));
+    }
+
+    private static Map<Object, Integer> newKeyMap(int size, boolean concurrent) {
+        int capacity = size * 4 / 3 + 1;
+        if (concurrent) {
+            return new ConcurrentHashMap<Object, Integer>(capacity);
+        }
+        return new HashMap<Object, Integer>(capacity);
+    }
+
+    /**
+     * Puts the key to the map, if it is not there yet.
+     *
+     * @param keys the map of keys; concurrent map if used by several workers.
+     * @param key the key, can be null.
+     * @param index the index of the value with the key.
+     * @return true if key is added, false if map already has the key.
+     */
+    @SuppressWarnings(Warnings.Unchecked)
+    private static boolean putKey(Map<Object, Integer> keys, Object key, int index) {
+        if (key == null) {
+            key = NULL_KEY;
+        }
+        if (keys instanceof ConcurrentMap) {
+            return ((ConcurrentMap<Object, Integer>) keys).putIfAbsent(key, index) == null;
+        }
+        return keys.put(key, index) == null;
+    }
+
+    @SuppressWarnings(Warnings.Unchecked)
+    private void index(Map<Object, Integer> index, Object[] olds, int start, int end) {
+        for (int i = start; i < end; i++) {
+            boolean added = putKey(index, keyFunction.run((T) olds[i]), i);
+            ArgumentAssert.isTrue(added, "Old values have duplicate keys.");
+        }
+    }
+
+    @SuppressWarnings(Warnings.Unchecked)
+    private void classify(Map<Object, Integer> index, Object[] olds, Object[] news, Map<Object, Integer> newKeys,
+                          byte[] states, boolean[] matched, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            K key = keyFunction.run((T) news[i]);
+            boolean added = putKey(newKeys, key, i);
+            ArgumentAssert.isTrue(added, "New values have duplicate keys.");
+
+            Integer oldIndex = index.get(key != null ? key : NULL_KEY);
+            if (oldIndex == null) {
+                states[i] = ADDED;
+            }
+            else {
+                int j = oldIndex;
+                matched[j] = true;
+                states[i] = (ObjectUtils.equals(olds[j], news[i]) ? UNMODIFIED : MODIFIED);
+            }
+        }
+    }
+}
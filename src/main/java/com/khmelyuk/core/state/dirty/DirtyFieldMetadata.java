@@ -0,0 +1,184 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+
+import java.beans.Introspector;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * The names of tracked fields of the class, each with its own index,
+ * used as the bit number in the {@link DirtyFields} mask.
+ * <br/>
+ * The metadata of the class is created once and cached by {@link #forClass(Class)}.
+ * Metadata doesn't reference the class, so the cache holds classes weakly and doesn't
+ * prevent unloading of their class loaders.
+ * Fields of the interface are the properties of its setters, in order of names,
+ * so the interface can be tracked with {@link DirtyFieldsProxy}.
+ * Fields of the class are its non-static and non-transient fields,
+ * starting from the fields of the superclass, each class in order of names,
+ * so indexes are the same in different JVMs. The field hidden by the field
+ * of subclass with the same name has the single index.
+ * <br/>
+ * Metadata is immutable and thread-safe.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class DirtyFieldMetadata {
+
+    private static final Map<Class<?>, DirtyFieldMetadata> CACHE =
+            Collections.synchronizedMap(new WeakHashMap<Class<?>, DirtyFieldMetadata>());
+
+    private final String[] names;
+    private final Map<String, Integer> indexes;
+    private final Map<String, Integer> setters;
+
+    /**
+     * Creates the metadata with specified field names.
+     *
+     * @param names the field names; can't be null or contain null or duplicate names.
+     */
+    public DirtyFieldMetadata(String... names) {
+        this(names, Collections.<String, Integer>emptyMap());
+    }
+
+    private DirtyFieldMetadata(String[] names, Map<String, Integer> setters) {
+        ArgumentAssert.isNotNull(names, "Field names can't be null.");
+
+        this.names = names.clone();
+        this.indexes = new HashMap<String, Integer>(names.length * 4 / 3 + 1);
+        for (int i = 0; i < names.length; i++) {
+            ArgumentAssert.isNotNull(names[i], "Field name can't be null.");
+            ArgumentAssert.isTrue(indexes.put(names[i], i) == null, "Duplicate field name " + names[i] + ".");
+        }
+        this.setters = setters;
+    }
+
+    /**
+     * Gets the metadata of the class or interface.
+     *
+     * @param type the class or interface; can't be null.
+     * @return the cached metadata.
+     */
+    public static DirtyFieldMetadata forClass(Class<?> type) {
+        ArgumentAssert.isNotNull(type, "Type can't be null.");
+
+        DirtyFieldMetadata metadata = CACHE.get(type);
+        if (metadata == null) {
+            // metadata created twice by concurrent threads is the same
+            metadata = (type.isInterface() ? createForInterface(type) : createForClass(type));
+            CACHE.put(type, metadata);
+        }
+        return metadata;
+    }
+
+    private static DirtyFieldMetadata createForClass(Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> each = type; each != null && each != Object.class; each = each.getSuperclass()) {
+            hierarchy.add(0, each);
+        }
+
+        // declared fields are returned in no particular order, so sort them
+        Set<String> names = new LinkedHashSet<String>();
+        for (Class<?> each : hierarchy) {
+            Set<String> classNames = new TreeSet<String>();
+            for (Field field : each.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    classNames.add(field.getName());
+                }
+            }
+            names.addAll(classNames);
+        }
+        return new DirtyFieldMetadata(names.toArray(new String[names.size()]));
+    }
+
+    private static DirtyFieldMetadata createForInterface(Class<?> type) {
+        // setters are kept by name, so metadata doesn't reference the interface
+        Map<String, String> properties = new TreeMap<String, String>();
+        for (Method method : type.getMethods()) {
+            String name = method.getName();
+            if (name.length() > 3 && name.startsWith("set") && method.getParameterTypes().length == 1) {
+                properties.put(Introspector.decapitalize(name.substring(3)), name);
+            }
+        }
+
+        String[] names = new String[properties.size()];
+        Map<String, Integer> setters = new HashMap<String, Integer>(properties.size() * 4 / 3 + 1);
+        int index = 0;
+        for (Map.Entry<String, String> each : properties.entrySet()) {
+            names[index] = each.getKey();
+            setters.put(each.getValue(), index);
+            index++;
+        }
+        return new DirtyFieldMetadata(names, setters);
+    }
+
+    /**
+     * Gets the number of tracked fields.
+     *
+     * @return the number of fields.
+     */
+    public int getFieldsCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name of the field.
+     *
+     * @param index the field index.
+     * @return the field name.
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Gets the index of the field.
+     *
+     * @param name the field name.
+     * @return the field index or -1 if there is no such field.
+     */
+    public int getIndex(String name) {
+        Integer index = indexes.get(name);
+        return (index != null ? index : -1);
+    }
+
+    /**
+     * Gets the index of the field changed by setter of the interface.
+     *
+     * @param method the name of the method with one parameter.
+     * @return the field index or -1 if method is not a setter.
+     */
+    int getSetterIndex(String method) {
+        Integer index = setters.get(method);
+        return (index != null ? index : -1);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+import com.khmelyuk.core.utils.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The changed fields of the single instance, kept as the bit mask
+ * with the bit for each field of {@link DirtyFieldMetadata}.
+ * Mask is a single {@code long} field for classes with up to 64 fields,
+ * so it is cheap to keep for each tracked instance; the array of words
+ * is allocated only for classes with more fields.
+ * <br/>
+ * Fields are marked either explicitly, usually by the setters of the class,
+ * or by the proxy created with {@link DirtyFieldsProxy}.
+ * Dirty fields are used to update only changed columns.
+ * <br/>
+ * Not thread-safe.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyFields {
+
+    private final DirtyFieldMetadata metadata;
+    private long mask;
+    /**
+     * The mask words if there are more than 64 fields, or null.
+     */
+    private final long[] words;
+
+    /**
+     * Creates the dirty fields for the instance of the class.
+     *
+     * @param type the class or interface; can't be null.
+     */
+    public DirtyFields(Class<?> type) {
+        this(DirtyFieldMetadata.forClass(type));
+    }
+
+    /**
+     * Creates the dirty fields with the metadata.
+     *
+     * @param metadata the fields metadata; can't be null.
+     */
+    public DirtyFields(DirtyFieldMetadata metadata) {
+        ArgumentAssert.isNotNull(metadata, "Metadata can't be null.");
+        this.metadata = metadata;
+        int count = metadata.getFieldsCount();
+        this.words = (count > 64 ? new long[(count + 63) >>> 6] : null);
+    }
+
+    public DirtyFieldMetadata getMetadata() {
+        return metadata;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= metadata.getFieldsCount()) {
+            throw new IndexOutOfBoundsException("Field index: " + index + ", Count: " + metadata.getFieldsCount());
+        }
+        return index;
+    }
+
+    private int indexOf(String name) {
+        int index = metadata.getIndex(name);
+        ArgumentAssert.isTrue(index != -1, "Unknown field " + name + ".");
+        return index;
+    }
+
+    /**
+     * Marks the field as changed.
+     *
+     * @param index the field index.
+     */
+    public void markDirty(int index) {
+        checkIndex(index);
+        if (words == null) {
+            mask |= (1L << index);
+        }
+        else {
+            words[index >>> 6] |= (1L << index);
+        }
+    }
+
+    /**
+     * Marks the field as changed.
+     *
+     * @param name the field name; must be a known field.
+     */
+    public void markDirty(String name) {
+        markDirty(indexOf(name));
+    }
+
+    /**
+     * Marks the field as changed if old and new values are not equal.
+     *
+     * @param index the field index.
+     * @param oldValue the old value of the field.
+     * @param newValue the new value of the field.
+     */
+    public void markDirty(int index, Object oldValue, Object newValue) {
+        if (!ObjectUtils.equals(oldValue, newValue)) {
+            markDirty(index);
+        }
+    }
+
+    public boolean isDirty(int index) {
+        checkIndex(index);
+        long word = (words == null ? mask : words[index >>> 6]);
+        return (word & (1L << index)) != 0;
+    }
+
+    public boolean isDirty(String name) {
+        return isDirty(indexOf(name));
+    }
+
+    /**
+     * Checks whether any field was changed.
+     *
+     * @return {@code true} if there are changed fields.
+     */
+    public boolean isDirty() {
+        if (words == null) {
+            return mask != 0;
+        }
+        for (long each : words) {
+            if (each != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of changed fields.
+     *
+     * @return the number of changed fields.
+     */
+    public int getDirtyCount() {
+        if (words == null) {
+            return Long.bitCount(mask);
+        }
+        int count = 0;
+        for (long each : words) {
+            count += Long.bitCount(each);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the index of the next changed field.
+     * Changed fields are iterated with
+     * {@code for (int i = fields.nextDirtyIndex(0); i != -1; i = fields.nextDirtyIndex(i + 1))}.
+     *
+     * @param from the index to start from, inclusive.
+     * @return the index of changed field or -1 if there are no more changed fields.
+     */
+    public int nextDirtyIndex(int from) {
+        if (words == null) {
+            if (from < 0 || from >= 64) {
+                return -1;
+            }
+            long bits = mask & (-1L << from);
+            return (bits != 0 ? Long.numberOfTrailingZeros(bits) : -1);
+        }
+
+        int word = from >>> 6;
+        if (from < 0 || word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Gets the names of changed fields in order of their indexes.
+     *
+     * @return the list of names of changed fields.
+     */
+    public List<String> getDirtyNames() {
+        List<String> result = new ArrayList<String>(getDirtyCount());
+        for (int i = nextDirtyIndex(0); i != -1; i = nextDirtyIndex(i + 1)) {
+            result.add(metadata.getName(i));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the mask of changed fields, the bit for each field index.
+     * The mask is available for classes with up to 64 fields only.
+     *
+     * @return the mask of changed fields.
+     * @throws IllegalStateException if there are more than 64 fields.
+     */
+    public long getMask() {
+        StateAssert.isTrue(words == null, "Mask is available for up to 64 fields only.");
+        return mask;
+    }
+
+    /**
+     * Marks all fields as unchanged, for example after changes were saved.
+     */
+    public void clear() {
+        mask = 0;
+        if (words != null) {
+            Arrays.fill(words, 0);
+        }
+    }
+}
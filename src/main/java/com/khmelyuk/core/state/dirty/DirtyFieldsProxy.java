@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * The proxy for the interface that marks the field as changed on each call of its setter,
+ * and then delegates the call to the target object.
+ * The proxy also implements {@link DirtyTracked} to get its changed fields.
+ * <br/>
+ * For example:
+ * <pre>
+ *   User user = DirtyFieldsProxy.create(User.class, new UserImpl());
+ *   user.setName("John");
+ *   DirtyFields fields = ((DirtyTracked) user).getDirtyFields();
+ * </pre>
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyFieldsProxy implements InvocationHandler {
+
+    private static final Method GET_DIRTY_FIELDS;
+
+    static {
+        try {
+            GET_DIRTY_FIELDS = DirtyTracked.class.getMethod("getDirtyFields");
+        }
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final Object target;
+    private final DirtyFields fields;
+
+    private DirtyFieldsProxy(Object target, DirtyFields fields) {
+        this.target = target;
+        this.fields = fields;
+    }
+
+    /**
+     * Creates the proxy for the target that tracks changes of fields
+     * made through the setters of the interface.
+     *
+     * @param type the interface; can't be null.
+     * @param target the target object; can't be null.
+     * @return the created proxy, that also implements {@link DirtyTracked}.
+     */
+    public static <T> T create(Class<T> type, T target) {
+        ArgumentAssert.isNotNull(type, "Type can't be null.");
+        ArgumentAssert.isNotNull(target, "Target can't be null.");
+        ArgumentAssert.isTrue(type.isInterface(), "Type must be an interface.");
+
+        DirtyFields fields = new DirtyFields(DirtyFieldMetadata.forClass(type));
+        Object proxy = Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[]{type, DirtyTracked.class},
+                new DirtyFieldsProxy(target, fields));
+
+        return type.cast(proxy);
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.equals(GET_DIRTY_FIELDS)) {
+            return fields;
+        }
+
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        if (args != null && args.length == 1) {
+            int index = fields.getMetadata().getSetterIndex(method.getName());
+            if (index != -1) {
+                fields.markDirty(index);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.code.Warnings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The values split by their dirty states. The list for each state is created
+ * only when the first value with this state is added, and grows as values are added,
+ * so there is no list of the size of all values for each state.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ * @see DirtyUtils#partition(java.util.Collection)
+ */
+public class DirtyPartition<T> {
+
+    private static final DirtyState[] STATES = DirtyState.values();
+
+    private final List<T>[] values;
+
+    @SuppressWarnings(Warnings.Unchecked)
+    public DirtyPartition() {
+        values = new List[STATES.length];
+    }
+
+    /**
+     * Adds the value to the list of values with specified state.
+     *
+     * @param value the value.
+     * @param state the dirty state; can't be null.
+     */
+    public void add(T value, DirtyState state) {
+        ArgumentAssert.isNotNull(state, "Dirty state can't be null.");
+
+        List<T> list = values[state.ordinal()];
+        if (list == null) {
+            list = new ArrayList<T>();
+            values[state.ordinal()] = list;
+        }
+        list.add(value);
+    }
+
+    /**
+     * Gets the values with specified state.
+     *
+     * @param state the dirty state; can't be null.
+     * @return the unmodifiable list of values, or empty list if there are no values with such state.
+     */
+    public List<T> get(DirtyState state) {
+        ArgumentAssert.isNotNull(state, "Dirty state can't be null.");
+
+        List<T> list = values[state.ordinal()];
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public List<T> getAdded() {
+        return get(DirtyState.ADDED);
+    }
+
+    public List<T> getModified() {
+        return get(DirtyState.MODIFIED);
+    }
+
+    public List<T> getRemoved() {
+        return get(DirtyState.REMOVED);
+    }
+
+    public List<T> getUnmodified() {
+        return get(DirtyState.UNMODIFIED);
+    }
+
+    /**
+     * Gets the number of values with specified state.
+     *
+     * @param state the dirty state; can't be null.
+     * @return the number of values.
+     */
+    public int size(DirtyState state) {
+        ArgumentAssert.isNotNull(state, "Dirty state can't be null.");
+
+        List<T> list = values[state.ordinal()];
+        return (list != null ? list.size() : 0);
+    }
+
+    /**
+     * Checks whether there are added, modified or removed values.
+     *
+     * @return {@code true} if any value is not unmodified.
+     */
+    public boolean isDirty() {
+        return size(DirtyState.ADDED) != 0
+                || size(DirtyState.MODIFIED) != 0
+                || size(DirtyState.REMOVED) != 0;
+    }
+}
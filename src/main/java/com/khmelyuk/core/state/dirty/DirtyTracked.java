@@ -0,0 +1,34 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.khmelyuk.core.state.dirty;
+
+/**
+ * The object that tracks its changed fields.
+ * Implemented by proxies created with {@link DirtyFieldsProxy}.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public interface DirtyTracked {
+
+    /**
+     * Gets the changed fields of this object.
+     *
+     * @return the changed fields.
+     */
+    DirtyFields getDirtyFields();
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.code.Warnings;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The list that tracks the dirty state of its elements without wrapping them.
+ * Values are kept in the array, and states are kept in the parallel byte array
+ * of {@link DirtyState} ordinals, while the bit set marks the indexes of dirty elements,
+ * so dirty elements are iterated without looking at unmodified ones.
+ * <br/>
+ * Added elements are {@code ADDED}, and replaced unmodified elements are {@code MODIFIED}.
+ * Removed elements that were not added are kept separately as {@code REMOVED},
+ * as they are not a part of the list anymore. Removed added elements are just forgotten.
+ * <br/>
+ * List is not thread-safe.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyTrackingList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final DirtyState[] STATES = DirtyState.values();
+    private static final byte UNMODIFIED = (byte) DirtyState.UNMODIFIED.ordinal();
+    private static final byte ADDED = (byte) DirtyState.ADDED.ordinal();
+    private static final byte MODIFIED = (byte) DirtyState.MODIFIED.ordinal();
+
+    private Object[] values;
+    private byte[] states;
+    private int size;
+    private final BitSet dirty = new BitSet();
+    private final List<T> removed = new ArrayList<T>();
+
+    public DirtyTrackingList() {
+        this(10);
+    }
+
+    public DirtyTrackingList(int capacity) {
+        ArgumentAssert.isTrue(capacity >= 0, "Capacity can't be negative.");
+        values = new Object[capacity];
+        states = new byte[capacity];
+        fillUnmodified(0, capacity);
+    }
+
+    /**
+     * Creates the list with the unmodified values.
+     *
+     * @param values the initial values; can't be null.
+     */
+    public DirtyTrackingList(Collection<? extends T> values) {
+        ArgumentAssert.isNotNull(values, "Values can't be null.");
+        this.values = values.toArray(new Object[values.size()]);
+        this.states = new byte[this.values.length];
+        this.size = this.values.length;
+        fillUnmodified(0, this.states.length);
+    }
+
+    private void fillUnmodified(int from, int to) {
+        for (int i = from; i < to; i++) {
+            states[i] = UNMODIFIED;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        int oldCapacity = values.length;
+        if (capacity > oldCapacity) {
+            int newCapacity = Math.max(capacity, oldCapacity + (oldCapacity >> 1) + 1);
+
+            Object[] newValues = new Object[newCapacity];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+
+            byte[] newStates = new byte[newCapacity];
+            System.arraycopy(states, 0, newStates, 0, size);
+            states = newStates;
+            fillUnmodified(size, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Updates the dirty bits of elements starting from index, after elements were shifted.
+     */
+    private void updateDirty(int from) {
+        dirty.clear(from, Math.max(from, size + 1));
+        for (int i = from; i < size; i++) {
+            if (states[i] != UNMODIFIED) {
+                dirty.set(i);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings(Warnings.Unchecked)
+    public T get(int index) {
+        checkIndex(index, size);
+        return (T) values[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(T value) {
+        ensureCapacity(size + 1);
+        values[size] = value;
+        states[size] = ADDED;
+        dirty.set(size);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, T value) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+
+        System.arraycopy(values, index, values, index + 1, size - index);
+        System.arraycopy(states, index, states, index + 1, size - index);
+        values[index] = value;
+        states[index] = ADDED;
+        size++;
+        modCount++;
+        updateDirty(index);
+    }
+
+    @Override
+    public T set(int index, T value) {
+        T oldValue = get(index);
+        values[index] = value;
+        if (states[index] == UNMODIFIED) {
+            states[index] = MODIFIED;
+            dirty.set(index);
+        }
+        return oldValue;
+    }
+
+    @Override
+    public T remove(int index) {
+        T oldValue = get(index);
+        if (states[index] != ADDED) {
+            removed.add(oldValue);
+        }
+
+        int moved = size - index - 1;
+        System.arraycopy(values, index + 1, values, index, moved);
+        System.arraycopy(states, index + 1, states, index, moved);
+        size--;
+        values[size] = null;
+        states[size] = UNMODIFIED;
+        modCount++;
+        updateDirty(index);
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            if (states[i] != ADDED) {
+                removed.add(get(i));
+            }
+            values[i] = null;
+        }
+        fillUnmodified(0, size);
+        dirty.clear();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Marks the element as modified, for example when element itself was changed.
+     * Added element stays added.
+     *
+     * @param index the element index.
+     */
+    public void markModified(int index) {
+        checkIndex(index, size);
+        if (states[index] == UNMODIFIED) {
+            states[index] = MODIFIED;
+            dirty.set(index);
+        }
+    }
+
+    /**
+     * Gets the dirty state of the element.
+     *
+     * @param index the element index.
+     * @return the dirty state.
+     */
+    public DirtyState getState(int index) {
+        checkIndex(index, size);
+        return STATES[states[index]];
+    }
+
+    /**
+     * Gets the index of the next added or modified element.
+     * Dirty elements are iterated with
+     * {@code for (int i = list.nextDirtyIndex(0); i != -1; i = list.nextDirtyIndex(i + 1))}.
+     *
+     * @param from the index to start from, inclusive.
+     * @return the index of dirty element or -1 if there are no more dirty elements.
+     */
+    public int nextDirtyIndex(int from) {
+        int index = dirty.nextSetBit(from);
+        return (index < size ? index : -1);
+    }
+
+    /**
+     * Gets the number of added and modified elements.
+     *
+     * @return the number of dirty elements in the list.
+     */
+    public int getDirtyCount() {
+        return dirty.cardinality();
+    }
+
+    /**
+     * Gets the removed elements, that were not added to this list.
+     *
+     * @return the unmodifiable list of removed elements.
+     */
+    public List<T> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Checks whether there are added, modified or removed elements.
+     *
+     * @return {@code true} if list has changes.
+     */
+    public boolean isDirty() {
+        return !dirty.isEmpty() || !removed.isEmpty();
+    }
+
+    /**
+     * Gets the added, modified and removed elements as dirty wrappers.
+     *
+     * @return the list of dirty wrappers, removed elements go last.
+     */
+    public List<DirtyWrapper<T>> getDirtyValues() {
+        List<DirtyWrapper<T>> result = new ArrayList<DirtyWrapper<T>>(getDirtyCount() + removed.size());
+        for (int i = nextDirtyIndex(0); i != -1; i = nextDirtyIndex(i + 1)) {
+            result.add(new DirtyWrapper<T>(get(i), getState(i)));
+        }
+        for (T each : removed) {
+            result.add(new DirtyWrapper<T>(each, DirtyState.REMOVED));
+        }
+        return result;
+    }
+
+    /**
+     * Marks all elements as unmodified and forgets removed elements,
+     * for example after changes were saved.
+     */
+    public void clearDirty() {
+        for (int i = nextDirtyIndex(0); i != -1; i = nextDirtyIndex(i + 1)) {
+            states[i] = UNMODIFIED;
+        }
+        dirty.clear();
+        removed.clear();
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.code.Warnings;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The map that tracks changes of its keys in the insertion-ordered changelog,
+ * so flushing the changes costs the number of changes rather than the map size.
+ * Changes of the same key are collapsed:
+ * <ul>
+ * <li>added and then removed key is forgotten;</li>
+ * <li>added and then modified key stays {@code ADDED};</li>
+ * <li>removed and then added key becomes {@code MODIFIED}.</li>
+ * </ul>
+ * Map is thread-safe, and {@link #drainChanges()} gets the changes and resets tracking atomically.
+ * Key, value and entry views are unmodifiable, and should be iterated
+ * in the block synchronized on this map.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyTrackingMap<K, V> implements Map<K, V> {
+
+    private final Map<K, V> map;
+    private LinkedHashMap<K, DirtyState> changes = new LinkedHashMap<K, DirtyState>();
+
+    public DirtyTrackingMap() {
+        map = new HashMap<K, V>();
+    }
+
+    /**
+     * Creates the map with the unmodified entries.
+     *
+     * @param map the initial entries.
+     */
+    public DirtyTrackingMap(Map<? extends K, ? extends V> map) {
+        this.map = new HashMap<K, V>(map);
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public synchronized boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    public synchronized boolean containsValue(Object value) {
+        return map.containsValue(value);
+    }
+
+    public synchronized V get(Object key) {
+        return map.get(key);
+    }
+
+    public synchronized V put(K key, V value) {
+        boolean exists = map.containsKey(key);
+        V oldValue = map.put(key, value);
+        if (exists) {
+            markModified(key);
+        }
+        else if (changes.get(key) == DirtyState.REMOVED) {
+            changes.put(key, DirtyState.MODIFIED);
+        }
+        else {
+            changes.put(key, DirtyState.ADDED);
+        }
+        return oldValue;
+    }
+
+    public synchronized void putAll(Map<? extends K, ? extends V> map) {
+        for (Entry<? extends K, ? extends V> each : map.entrySet()) {
+            put(each.getKey(), each.getValue());
+        }
+    }
+
+    public synchronized V remove(Object key) {
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        V oldValue = map.remove(key);
+        removed(key);
+        return oldValue;
+    }
+
+    @SuppressWarnings({Warnings.Unchecked, "SuspiciousMethodCalls"})
+    private void removed(Object key) {
+        if (changes.get(key) == DirtyState.ADDED) {
+            changes.remove(key);
+        }
+        else {
+            // key was in the map, so it has type K
+            changes.put((K) key, DirtyState.REMOVED);
+        }
+    }
+
+    public synchronized void clear() {
+        for (K each : map.keySet()) {
+            removed(each);
+        }
+        map.clear();
+    }
+
+    public synchronized Set<K> keySet() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    public synchronized Collection<V> values() {
+        return Collections.unmodifiableCollection(map.values());
+    }
+
+    public synchronized Set<Entry<K, V>> entrySet() {
+        return Collections.unmodifiableMap(map).entrySet();
+    }
+
+    /**
+     * Marks the value of the key as modified, for example when value itself was changed.
+     * Added key stays added.
+     *
+     * @param key the key of modified value.
+     * @return {@code true} if map contains such key and it was marked.
+     */
+    public synchronized boolean markModified(K key) {
+        if (!map.containsKey(key)) {
+            return false;
+        }
+        if (changes.get(key) != DirtyState.ADDED) {
+            changes.put(key, DirtyState.MODIFIED);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the state of the key.
+     *
+     * @param key the key.
+     * @return the state of the key, or null if key is not in the map and was not removed.
+     */
+    public synchronized DirtyState getState(K key) {
+        DirtyState state = changes.get(key);
+        if (state == null && map.containsKey(key)) {
+            state = DirtyState.UNMODIFIED;
+        }
+        return state;
+    }
+
+    /**
+     * Checks whether there are changes since the map was created or drained.
+     *
+     * @return {@code true} if map has changes.
+     */
+    public synchronized boolean isDirty() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Gets the number of changed keys.
+     *
+     * @return the number of changed keys.
+     */
+    public synchronized int getChangesCount() {
+        return changes.size();
+    }
+
+    /**
+     * Gets the copy of the changelog.
+     *
+     * @return the map of changed keys to their states, in order of the first change.
+     */
+    public synchronized Map<K, DirtyState> getChanges() {
+        return new LinkedHashMap<K, DirtyState>(changes);
+    }
+
+    /**
+     * Gets the changelog and resets tracking, so all entries become unmodified.
+     *
+     * @return the map of changed keys to their states, in order of the first change.
+     */
+    public synchronized Map<K, DirtyState> drainChanges() {
+        Map<K, DirtyState> result = changes;
+        changes = new LinkedHashMap<K, DirtyState>();
+        return result;
+    }
+
+    @Override
+    public synchronized boolean equals(Object o) {
+        return o == this || map.equals(o);
+    }
+
+    @Override
+    public synchronized int hashCode() {
+        return map.hashCode();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return map.toString();
+    }
+}
@@ -254,4 +254,42 @@ public class DirtyUtils {
     public static <T> Collection<T> getValuesExceptUnmodified(Map<T, DirtyState> dirtyValues) {
         return getValuesWithoutState(dirtyValues, DirtyState.UNMODIFIED);
     }
+
+    /**
+     * Splits the values from dirty wrapped collection by their dirty states
+     * in one pass over the collection. Values with {@code null} state are skipped.
+     *
+     * @param dirtyValues the collection of dirty values; can't be null.
+     * @return the values split by dirty states.
+     */
+    public static <T> DirtyPartition<T> partition(Collection<DirtyWrapper<T>> dirtyValues) {
+        ArgumentAssert.isNotNull(dirtyValues, "Dirty values can't be null.");
+
+        DirtyPartition<T> result = new DirtyPartition<T>();
+        for (DirtyWrapper<T> eachDirtyValue : dirtyValues) {
+            if (eachDirtyValue.getState() != null) {
+                result.add(eachDirtyValue.getValue(), eachDirtyValue.getState());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the values from dirty map by their dirty states
+     * in one pass over the map. Values with {@code null} state are skipped.
+     *
+     * @param dirtyValues the dirty map; can't be null.
+     * @return the values split by dirty states.
+     */
+    public static <T> DirtyPartition<T> partition(Map<T, DirtyState> dirtyValues) {
+        ArgumentAssert.isNotNull(dirtyValues, "Dirty values can't be null.");
+
+        DirtyPartition<T> result = new DirtyPartition<T>();
+        for (Map.Entry<T, DirtyState> eachDirtyValue : dirtyValues.entrySet()) {
+            if (eachDirtyValue.getValue() != null) {
+                result.add(eachDirtyValue.getKey(), eachDirtyValue.getValue());
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The listener that notifies the wrapped listener asynchronously.
+ * State changes are put into the bounded lock-free queue and delivered
+ * to the wrapped listener by the task run with specified executor.
+ * <br/>
+ * Only one thread delivers state changes at a time, so the wrapped listener is notified
+ * in the same order as state changes happened. Use one asynchronous listener per
+ * state machine to keep the order of notifications per state machine.
+ * <br/>
+ * If queue is full, the new state change is processed according to the {@link OverflowPolicy}.
+ * <br/>
+ * This listener can't be serialized.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class AsyncStateChangeListener implements StateChangeListener {
+
+    /**
+     * The policy of processing state changes when queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /** Wait until there is a free space in the queue. */
+        BLOCK,
+
+        /** Drop the state change. */
+        DROP,
+
+        /**
+         * Deliver queued and this state change in the caller thread,
+         * if the delivery task is not running at this moment. Otherwise wait
+         * until there is a free space in the queue.
+         */
+        CALLER_RUNS
+    }
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int DELIVERING = 2;
+
+    private final StateChangeListener listener;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final Queue<State[]> queue = new ConcurrentLinkedQueue<State[]>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger delivery = new AtomicInteger(IDLE);
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Runnable deliveryTask = new Runnable() {
+        public void run() {
+            // the delivery could be taken by the caller thread already
+            if (delivery.compareAndSet(SCHEDULED, DELIVERING)) {
+                try {
+                    deliver();
+                }
+                finally {
+                    delivery.set(IDLE);
+                    scheduleIfNeeded();
+                }
+            }
+        }
+    };
+
+    /**
+     * Creates the asynchronous listener.
+     *
+     * @param listener the listener to notify; can't be null.
+     * @param executor the executor to run delivery tasks; can't be null.
+     * @param capacity the max number of state changes in the queue; must be positive.
+     * @param policy the policy of processing state changes when queue is full; can't be null.
+     */
+    public AsyncStateChangeListener(StateChangeListener listener, Executor executor,
+                                    int capacity, OverflowPolicy policy) {
+        ArgumentAssert.isNotNull(listener, "Listener cannot be null.");
+        ArgumentAssert.isNotNull(executor, "Executor cannot be null.");
+        ArgumentAssert.isTrue(capacity > 0, "Capacity must be positive.");
+        ArgumentAssert.isNotNull(policy, "Overflow policy cannot be null.");
+
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public void onChange(State fromState, State toState) {
+        State[] change = new State[] {fromState, toState};
+
+        while (!offer(change)) {
+            if (policy == OverflowPolicy.DROP) {
+                dropped.incrementAndGet();
+                return;
+            }
+            else if (policy == OverflowPolicy.CALLER_RUNS && takeDelivery()) {
+                try {
+                    deliver();
+                    listener.onChange(fromState, toState);
+                }
+                finally {
+                    delivery.set(IDLE);
+                    scheduleIfNeeded();
+                }
+                return;
+            }
+            scheduleIfNeeded();
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        scheduleIfNeeded();
+    }
+
+    /**
+     * Gets the number of state changes in the queue.
+     * @return the number of queued state changes.
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    /**
+     * Gets the number of state changes that were dropped because queue was full.
+     * @return the number of dropped state changes.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private boolean offer(State[] change) {
+        for (;;) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                queue.offer(change);
+                return true;
+            }
+        }
+    }
+
+    private boolean takeDelivery() {
+        return delivery.compareAndSet(SCHEDULED, DELIVERING) || delivery.compareAndSet(IDLE, DELIVERING);
+    }
+
+    /**
+     * Delivers all queued state changes. Must be called only by the thread
+     * that switched the delivery to {@code DELIVERING}.
+     */
+    private void deliver() {
+        State[] change;
+        while ((change = queue.poll()) != null) {
+            size.decrementAndGet();
+            listener.onChange(change[0], change[1]);
+        }
+    }
+
+    private void scheduleIfNeeded() {
+        if (!queue.isEmpty() && delivery.compareAndSet(IDLE, SCHEDULED)) {
+            try {
+                executor.execute(deliveryTask);
+            }
+            catch (RuntimeException e) {
+                delivery.set(IDLE);
+                throw e;
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException(getClass().getName());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+import com.khmelyuk.core.utils.ObjectUtils;
+
+import java.io.Serializable;
+
+/**
+ * The base class of state machines generated by {@link StateMachineCodeGenerator}.
+ * Generated class finds the transition for input with {@code switch} statements
+ * instead of the compiled transition table, while actions and listeners are run
+ * by the definition the same way as for {@link StateMachineInstance}.
+ * <br/>
+ * The definition is checked to have the same fingerprint as the definition
+ * the class was generated for, so states and transitions are not changed since then.
+ * As the fingerprint doesn't detect the changed value with the same hash code,
+ * the generated constructor also checks each literal of the generated code
+ * with {@link #checkValue} and {@link #checkRange}.
+ * <br/>
+ * Instance is not thread-safe.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public abstract class GeneratedStateMachine {
+
+    private final StateMachineDefinition definition;
+    private int currentState = -1;
+    private boolean inProgress = false;
+
+    /**
+     * Creates the generated state machine.
+     *
+     * @param definition the definition of the state machine; can't be null.
+     * @param fingerprint the fingerprint of definition the class was generated for.
+     * @throws IllegalStateException if definition has other fingerprint.
+     */
+    protected GeneratedStateMachine(StateMachineDefinition definition, long fingerprint) {
+        ArgumentAssert.isNotNull(definition, "Definition cannot be null.");
+        StateAssert.isTrue(definition.getFingerprint() == fingerprint,
+                "Definition is changed since the state machine class was generated.");
+        this.definition = definition;
+    }
+
+    /**
+     * Checks that the condition of the transition is equals condition with the same value.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @param value the value used by generated code.
+     * @throws IllegalStateException if condition is different.
+     */
+    protected final void checkValue(int state, int transition, Object value) {
+        TransitionCondition condition = definition.getTransition(state, transition).getCondition();
+        boolean same = false;
+        if (condition.getClass() == EqualsCondition.class) {
+            Object conditionValue = ((EqualsCondition) condition).getConditionValue();
+            same = (value == null
+                    ? conditionValue == null
+                    : conditionValue != null && conditionValue.getClass() == value.getClass() && value.equals(conditionValue));
+        }
+        StateAssert.isTrue(same, "Definition is changed since the state machine class was generated.");
+    }
+
+    /**
+     * Checks that the condition of the transition is range condition with the same bounds.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @param lower the lower bound used by generated code.
+     * @param lowerInclusive whether lower bound is inclusive.
+     * @param upper the upper bound used by generated code.
+     * @param upperInclusive whether upper bound is inclusive.
+     * @throws IllegalStateException if condition is different.
+     */
+    protected final void checkRange(int state, int transition, double lower, boolean lowerInclusive,
+                                    double upper, boolean upperInclusive) {
+        TransitionCondition condition = definition.getTransition(state, transition).getCondition();
+        boolean same = false;
+        if (condition.getClass() == RangeCondition.class) {
+            RangeCondition range = (RangeCondition) condition;
+            same = (Double.compare(range.getLower(), lower) == 0 && range.isLowerInclusive() == lowerInclusive
+                    && Double.compare(range.getUpper(), upper) == 0 && range.isUpperInclusive() == upperInclusive);
+        }
+        StateAssert.isTrue(same, "Definition is changed since the state machine class was generated.");
+    }
+
+    public StateMachineDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Finds the first transition from the state that matches the input.
+     *
+     * @param state the index of the current state.
+     * @param input the input value.
+     * @return the index of the transition within the state transitions or -1 if none matches.
+     */
+    protected abstract int findTransition(int state, Serializable input);
+
+    /**
+     * Checks the condition of the transition that can't be generated as the code.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @param input the input value.
+     * @return {@code true} if condition matches the input.
+     */
+    protected final boolean match(int state, int transition, Serializable input) {
+        return definition.getTransition(state, transition).getCondition().match(input);
+    }
+
+    public void start() {
+        StateAssert.isTrue(currentState == -1, "Automate is started already.");
+        currentState = definition.getInitialStateIndex();
+        inProgress = true;
+    }
+
+    public void finish() {
+        StateAssert.isTrue(inProgress, "Automate is not in progress.");
+        StateAssert.isTrue(currentState != -1, "Automate is not started yet.");
+        inProgress = false;
+    }
+
+    public State input(Serializable input) {
+        if (currentState == -1) {
+            return null;
+        }
+        int transition = findTransition(currentState, input);
+        if (transition != -1) {
+            int state = currentState;
+            currentState = definition.fire(state, transition);
+            definition.notifyTransition(state, transition, currentState);
+        }
+        return definition.getState(currentState);
+    }
+
+    public State getCurrentState() {
+        return (currentState != -1 ? definition.getState(currentState) : null);
+    }
+
+    /**
+     * Gets the ordinal of the current state.
+     * @return the current state ordinal or -1 if state machine is not started.
+     */
+    public int getCurrentStateIndex() {
+        return currentState;
+    }
+
+    public State getFinishState() {
+        if (!inProgress) {
+            return getCurrentState();
+        }
+        return null;
+    }
+
+    public boolean isSuccess() {
+        return currentState != -1 && definition.isAcceptable(currentState);
+    }
+
+    public boolean isFailed() {
+        return !isSuccess();
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    public boolean isInState(Serializable state) {
+        return ObjectUtils.equals(getCurrentState().getState(), state);
+    }
+}
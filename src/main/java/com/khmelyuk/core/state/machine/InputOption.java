@@ -0,0 +1,54 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+/**
+ * The options of batched input, used by {@code inputAll} methods of
+ * {@link StateMachine} and {@link StateMachineInstance}.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public enum InputOption {
+
+    /**
+     * Notify listeners once per batch, with the state before the batch and the state
+     * after the batch, instead of notifying them on each transition.
+     * Listeners are not notified if the state after the batch is the same.
+     */
+    NOTIFY_ONCE,
+
+    /**
+     * Stop processing the input when the acceptable state is reached.
+     */
+    STOP_ON_ACCEPTABLE,
+
+    /**
+     * Stop processing the input when the state without outgoing transitions is reached.
+     */
+    STOP_ON_FINAL;
+
+    static boolean contains(InputOption[] options, InputOption option) {
+        for (InputOption each : options) {
+            if (each == option) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
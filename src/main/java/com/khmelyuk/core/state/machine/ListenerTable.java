@@ -0,0 +1,121 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled, immutable table of state change listeners.
+ * Listeners can be registered for all transitions, for transitions from or to
+ * some state, or for specific transition. The table keeps for each transition
+ * the array of listeners that should be notified about it, so notification
+ * doesn't touch listeners that are not interested in the transition.
+ * <br/>
+ * Listeners are notified in the order: listeners for all transitions, listeners of the
+ * exited state, listeners of the transition, listeners of the entered state.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+final class ListenerTable {
+
+    private static final StateChangeListener[] NO_LISTENERS = new StateChangeListener[0];
+
+    private final StateChangeListener[] globalListeners;
+    private final StateChangeListener[][] exitListeners;
+    private final StateChangeListener[][] enterListeners;
+    private final StateChangeListener[][][] transitionListeners;
+
+    ListenerTable(TransitionTable table,
+                  Collection<StateChangeListener> globalListeners,
+                  Map<State, List<StateChangeListener>> exitListeners,
+                  Map<State, List<StateChangeListener>> enterListeners,
+                  Map<Transition, List<StateChangeListener>> transitionListeners) {
+
+        int size = table.size();
+        this.globalListeners = toArray(globalListeners);
+        this.exitListeners = new StateChangeListener[size][];
+        this.enterListeners = new StateChangeListener[size][];
+        for (int i = 0; i < size; i++) {
+            State state = table.getState(i);
+            this.exitListeners[i] = toArray(exitListeners.get(state));
+            this.enterListeners[i] = toArray(enterListeners.get(state));
+        }
+
+        this.transitionListeners = new StateChangeListener[size][][];
+        for (int i = 0; i < size; i++) {
+            int count = table.getTransitionsCount(i);
+            this.transitionListeners[i] = new StateChangeListener[count][];
+            for (int j = 0; j < count; j++) {
+                List<StateChangeListener> listeners = new ArrayList<StateChangeListener>();
+                Collections.addAll(listeners, this.globalListeners);
+                Collections.addAll(listeners, this.exitListeners[i]);
+                Collections.addAll(listeners, toArray(transitionListeners.get(table.getTransition(i, j))));
+                Collections.addAll(listeners, this.enterListeners[table.getTarget(i, j)]);
+                this.transitionListeners[i][j] = toArray(listeners);
+            }
+        }
+    }
+
+    private static StateChangeListener[] toArray(Collection<StateChangeListener> listeners) {
+        if (listeners == null || listeners.isEmpty()) {
+            return NO_LISTENERS;
+        }
+        return listeners.toArray(new StateChangeListener[listeners.size()]);
+    }
+
+    /**
+     * Notifies listeners about the transition.
+     *
+     * @param state the index of the exited state.
+     * @param transition the index of the transition within the state transitions.
+     * @param fromState the exited state.
+     * @param toState the entered state.
+     */
+    void notify(int state, int transition, State fromState, State toState) {
+        StateChangeListener[] listeners = transitionListeners[state][transition];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onChange(fromState, toState);
+        }
+    }
+
+    /**
+     * Notifies listeners about the state change that is not bound to one transition.
+     * Listeners of transitions are not notified.
+     *
+     * @param from the index of the exited state.
+     * @param to the index of the entered state.
+     * @param fromState the exited state.
+     * @param toState the entered state.
+     */
+    void notifyChange(int from, int to, State fromState, State toState) {
+        notify(globalListeners, fromState, toState);
+        notify(exitListeners[from], fromState, toState);
+        notify(enterListeners[to], fromState, toState);
+    }
+
+    private static void notify(StateChangeListener[] listeners, State fromState, State toState) {
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onChange(fromState, toState);
+        }
+    }
+}
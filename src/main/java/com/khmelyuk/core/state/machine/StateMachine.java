@@ -3,7 +3,7 @@ package com.khmelyuk.core.state.machine;
 import com.khmelyuk.core.Pair;
 import com.khmelyuk.core.asserts.ArgumentAssert;
 import com.khmelyuk.core.asserts.StateAssert;
-import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.fp.Procedure;
 import com.khmelyuk.core.utils.ObjectUtils;
 
 import java.io.Serializable;
@@ -13,6 +13,10 @@ import java.util.*;
  * This is state machine. Supports for states with entry and exit actions,
  * transitions with actions and more then 1 finish states.
  * Also supports listeners.
+ * <br/>
+ * Transitions are looked up using the compiled transition table, which is built
+ * on demand and cached until states or transitions are changed. Call {@link #compile()}
+ * to build the table once and freeze the set of states and transitions.
  *
  * @author Ruslan Khmelyuk
  * @since 2008-8-23 18:12
@@ -23,25 +27,52 @@ public class StateMachine implements Serializable {
     private Map<Transition, Pair<State, State>> transitions;
     private List<State> acceptableStates = new ArrayList<State>();
     private List<StateChangeListener> changeListeners = new ArrayList<StateChangeListener>();
+    private Map<State, List<StateChangeListener>> exitListeners = new HashMap<State, List<StateChangeListener>>();
+    private Map<State, List<StateChangeListener>> enterListeners = new HashMap<State, List<StateChangeListener>>();
+    private Map<Transition, List<StateChangeListener>> transitionListeners = new HashMap<Transition, List<StateChangeListener>>();
 
     private State initialState;
     private State currentState;
     private boolean inProgress = false;
+    private boolean compiled = false;
+
+    private transient TransitionTable transitionTable;
+    private transient ListenerTable listenerTable;
+    private transient int currentStateIndex = -1;
+    private transient StateMachineMetrics metrics;
+    private transient long stateEnteredTime;
+    private transient TransitionTrace trace;
+    private transient Procedure<TransitionTrace> traceFailureHandler;
 
     public StateMachine() {
         states = new ArrayList<State>();
-        transitions = new HashMap<Transition, Pair<State, State>>();
+        transitions = new LinkedHashMap<Transition, Pair<State, State>>();
     }
 
     public StateMachine(int size) {
         states = new ArrayList<State>(size);
-        transitions = new HashMap<Transition, Pair<State, State>>(size * 4);
+        transitions = new LinkedHashMap<Transition, Pair<State, State>>(size * 4);
+    }
+
+    /**
+     * Creates the state machine with already validated states and transitions.
+     * Used by {@link StateMachineBuilder}.
+     */
+    StateMachine(List<State> states, LinkedHashMap<Transition, Pair<State, State>> transitions,
+                 List<State> acceptableStates, State initialState) {
+        this.states = states;
+        this.transitions = transitions;
+        this.acceptableStates = acceptableStates;
+        this.initialState = initialState;
     }
 
     public State addState(State state) {
         ArgumentAssert.isNotNull(state, "Cannot add state, because it is null.");
         ArgumentAssert.isFalse(containsState(state), "Cannot add the duplicated state.");
         StateAssert.isNull(currentState, "State machine is started: you cannot add new states now.");
+        StateAssert.isFalse(compiled, "State machine is compiled: you cannot add new states now.");
+        transitionTable = null;
+        listenerTable = null;
         return (states.add(state) ? state : null);
     }
 
@@ -56,10 +87,13 @@ public class StateMachine implements Serializable {
 
         ArgumentAssert.isTrue(containsState(stateFrom), "State from is not apart of state machine.");
         ArgumentAssert.isTrue(containsState(stateTo), "State to is not apart of state machine.");
+        StateAssert.isFalse(compiled, "State machine is compiled: you cannot add new transitions now.");
 
         Map<Transition, Pair<State, State>> transitions = getTransitionsWithStates(transition);
         if (transitions.size() == 0) {
             this.transitions.put(transition, new Pair<State, State>(stateFrom, stateTo));
+            transitionTable = null;
+            listenerTable = null;
         }
         else {
             for (Pair<State, State> states : transitions.values()) {
@@ -81,13 +115,12 @@ public class StateMachine implements Serializable {
     }
 
     public Map<Transition, Pair<State, State>> getTransitionsWithStates(Transition transition) {
-        Map<Transition, Pair<State, State>> result = new HashMap<Transition, Pair<State, State>>();
-        for (Map.Entry<Transition, Pair<State, State>> eachTransition : transitions.entrySet()) {
-            if (eachTransition.getKey().equals(transition)) {
-                result.put(eachTransition.getKey(), eachTransition.getValue());
-            }
+        // transitions are equal only if they are the same object, so there is one entry at most
+        Pair<State, State> states = transitions.get(transition);
+        if (states == null) {
+            return Collections.emptyMap();
         }
-        return Collections.unmodifiableMap(result);
+        return Collections.singletonMap(transition, states);
     }
 
     public State addAcceptableState(State state) {
@@ -135,72 +168,241 @@ public class StateMachine implements Serializable {
         StateAssert.isNotNull(initialState, "Initial state is not specified.");
         StateAssert.isNull(currentState, "Automate is started already.");
         currentState = initialState;
+        currentStateIndex = getTransitionTable().indexOf(initialState);
         inProgress = true;
+        if (metrics != null) {
+            stateEnteredTime = System.nanoTime();
+        }
     }
 
     public void finish() {
         StateAssert.isTrue(inProgress, "Automate is not in progress.");
         StateAssert.isNotNull(currentState, "Automate is not started yet.");
         inProgress = false;
+
+        if (trace != null && traceFailureHandler != null && isFailed()) {
+            traceFailureHandler.run(trace);
+        }
+    }
+
+    /**
+     * Compiles the transition table and freezes the state machine, so no states
+     * or transitions can be added after this call.
+     * The compiled table is used by {@link #input(java.io.Serializable)}.
+     */
+    public void compile() {
+        getTransitionTable();
+        compiled = true;
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Enables the metrics of this state machine. The state machine is compiled,
+     * as metrics are bound to the compiled transition table.
+     *
+     * @return the metrics of this state machine.
+     * @see StateMachineMetrics
+     */
+    public StateMachineMetrics enableMetrics() {
+        compile();
+        if (metrics == null) {
+            metrics = new StateMachineMetrics(getTransitionTable());
+            stateEnteredTime = System.nanoTime();
+        }
+        return metrics;
+    }
+
+    /**
+     * Enables the trace of the last transitions of this state machine.
+     * The state machine is compiled, as trace is bound to the compiled transition table.
+     *
+     * @param capacity the number of transitions to keep in the trace.
+     * @return the trace of this state machine.
+     * @see TransitionTrace
+     */
+    public TransitionTrace enableTrace(int capacity) {
+        return enableTrace(capacity, null);
+    }
+
+    /**
+     * Enables the trace of the last transitions of this state machine.
+     * The failure handler is called with the trace when the state machine
+     * is finished in the not acceptable state.
+     *
+     * @param capacity the number of transitions to keep in the trace.
+     * @param failureHandler the handler of failed state machine trace; can be null.
+     * @return the trace of this state machine.
+     * @see TransitionTrace
+     */
+    public TransitionTrace enableTrace(int capacity, Procedure<TransitionTrace> failureHandler) {
+        ArgumentAssert.isTrue(capacity > 0, "Capacity should be positive.");
+        compile();
+        trace = new TransitionTrace(getTransitionTable(), capacity);
+        traceFailureHandler = failureHandler;
+        return trace;
+    }
+
+    /**
+     * Gets the trace of this state machine.
+     *
+     * @return the trace or {@code null} if trace is not enabled.
+     */
+    public TransitionTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Gets the metrics of this state machine.
+     *
+     * @return the metrics or {@code null} if metrics are not enabled.
+     */
+    public StateMachineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Creates the immutable definition with the states, transitions, acceptable states,
+     * initial state and listeners of this state machine. The definition can be shared
+     * by many lightweight {@link StateMachineInstance} objects.
+     *
+     * @return the new state machine definition.
+     */
+    public StateMachineDefinition createDefinition() {
+        StateAssert.isNotNull(initialState, "Initial state is not specified.");
+        return new StateMachineDefinition(getTransitionTable(), initialState, acceptableStates, getListenerTable());
     }
 
     public State input(Serializable input) {
-        Map<Transition, State> transitions = getTransitionsForState(currentState);
+        if (currentState == null) {
+            return null;
+        }
 
-        for (Map.Entry<Transition, State> eachTransition : transitions.entrySet()) {
-            Transition transition = eachTransition.getKey();
+        TransitionTable table = getTransitionTable();
+        int transitionIndex = table.findTransition(currentStateIndex, input);
+        if (transitionIndex != -1) {
+            fire(table, transitionIndex, input, true);
+        }
 
-            if (transition.getCondition().match(input)) {
-                State nextState = eachTransition.getValue();
-                if (currentState.getExitAction() != null) {
-                    currentState.getExitAction().run(currentState, transition);
-                }
-                if (transition.getAction() != null) {
-                    transition.getAction().run(transition, currentState, nextState);
-                }
-                if (nextState.getEntryAction() != null) {
-                    nextState.getEntryAction().run(nextState, transition);
-                }
+        return currentState;
+    }
+
+    /**
+     * Processes the sequence of input values in one loop.
+     *
+     * @param inputs the input values; can't be null.
+     * @param options the batch options.
+     * @return the current state after the batch.
+     * @see #inputAll(java.util.Iterator, InputOption[])
+     */
+    public State inputAll(Iterable<? extends Serializable> inputs, InputOption... options) {
+        ArgumentAssert.isNotNull(inputs, "Inputs cannot be null.");
+        return inputAll(inputs.iterator(), options);
+    }
 
-                try {
-                    notifyStateChangeListeners(currentState, nextState, transition);
+    /**
+     * Processes the input values from iterator in one loop. The iterator is read
+     * until it has no more values, or until the processing is stopped
+     * according to the batch options.
+     *
+     * @param inputs the iterator of input values; can't be null.
+     * @param options the batch options.
+     * @return the current state after the batch.
+     */
+    public State inputAll(Iterator<? extends Serializable> inputs, InputOption... options) {
+        ArgumentAssert.isNotNull(inputs, "Inputs cannot be null.");
+        if (currentState == null) {
+            return null;
+        }
+
+        boolean notifyOnce = InputOption.contains(options, InputOption.NOTIFY_ONCE);
+        boolean stopOnAcceptable = InputOption.contains(options, InputOption.STOP_ON_ACCEPTABLE);
+        boolean stopOnFinal = InputOption.contains(options, InputOption.STOP_ON_FINAL);
+
+        TransitionTable table = getTransitionTable();
+        boolean[] acceptable = null;
+        if (stopOnAcceptable) {
+            acceptable = new boolean[table.size()];
+            for (State eachState : acceptableStates) {
+                acceptable[table.indexOf(eachState)] = true;
+            }
+        }
+
+        State batchState = currentState;
+        int batchStateIndex = currentStateIndex;
+        try {
+            while (inputs.hasNext()) {
+                if (stopOnAcceptable && acceptable[currentStateIndex]) {
+                    break;
                 }
-                finally {
-                    currentState = nextState;
+                if (stopOnFinal && !table.hasTransitions(currentStateIndex)) {
+                    break;
                 }
 
-                break;
+                Serializable input = inputs.next();
+                int transitionIndex = table.findTransition(currentStateIndex, input);
+                if (transitionIndex != -1) {
+                    fire(table, transitionIndex, input, !notifyOnce);
+                }
+            }
+        }
+        finally {
+            if (notifyOnce && batchState != currentState) {
+                getListenerTable().notifyChange(batchStateIndex, currentStateIndex, batchState, currentState);
             }
         }
 
         return currentState;
     }
 
-    private Map<Transition, State> getTransitionsForState(State state) {
+    private void fire(TransitionTable table, int transitionIndex, Serializable input, boolean notify) {
+        int nextStateIndex;
+        StateMachineMetrics metrics = this.metrics;
+        if (metrics == null) {
+            nextStateIndex = table.fire(currentStateIndex, transitionIndex);
+        }
+        else {
+            long now = System.nanoTime();
+            metrics.recordDwell(currentStateIndex, now - stateEnteredTime);
+            stateEnteredTime = now;
+            nextStateIndex = table.fire(currentStateIndex, transitionIndex, metrics);
+        }
+        if (trace != null) {
+            trace.record(currentStateIndex, nextStateIndex, ObjectUtils.hashCode(input));
+        }
+        State nextState = table.getState(nextStateIndex);
 
-        //
-        // An 'else condition' moved the end of the map.
-        Map<Transition, State> result = new TreeMap<Transition, State>(new Comparator<Transition>() {
-            public int compare(Transition left, Transition right) {
-                if (left.getCondition() instanceof ElseCondition) {
-                    return 1;
-                }
-                else if (right.getCondition() instanceof ElseCondition) {
-                    return -1;
-                }
-                return 0;
-            }
-        });
-
-        for (Map.Entry<Transition, Pair<State, State>> eachTransition : transitions.entrySet()) {
-            State fromState = eachTransition.getValue().getFirst();
-            if (fromState == state) {
-                Transition transition = eachTransition.getKey();
-                State endState = eachTransition.getValue().getSecond();
-                result.put(transition,  endState);
+        try {
+            if (notify) {
+                getListenerTable().notify(currentStateIndex, transitionIndex, currentState, nextState);
             }
         }
-        return result;
+        finally {
+            currentState = nextState;
+            currentStateIndex = nextStateIndex;
+        }
+    }
+
+    private TransitionTable getTransitionTable() {
+        TransitionTable table = transitionTable;
+        if (table == null) {
+            table = new TransitionTable(states, transitions);
+            transitionTable = table;
+            currentStateIndex = (currentState != null ? table.indexOf(currentState) : -1);
+        }
+        return table;
+    }
+
+    private ListenerTable getListenerTable() {
+        ListenerTable table = listenerTable;
+        if (table == null) {
+            table = new ListenerTable(getTransitionTable(), changeListeners,
+                    exitListeners, enterListeners, transitionListeners);
+            listenerTable = table;
+        }
+        return table;
     }
 
     public State getFinishState() {
@@ -227,12 +429,58 @@ public class StateMachine implements Serializable {
 
     public boolean addStateChangeListener(StateChangeListener listener) {
         ArgumentAssert.isNotNull(listener, "Listener cannot be null.");
+        listenerTable = null;
         return changeListeners.add(listener);
     }
 
-    private void notifyStateChangeListeners(State stateFrom, State stateTo, Transition transition) {
-        for (StateChangeListener listener : changeListeners) {
-            listener.onChange(stateFrom, stateTo);
+    /**
+     * Adds the listener that is notified only when state machine goes from specified state.
+     *
+     * @param state the state; can't be null.
+     * @param listener the listener; can't be null.
+     * @return {@code true} if listener is added.
+     */
+    public boolean addStateExitListener(State state, StateChangeListener listener) {
+        ArgumentAssert.isNotNull(state, "State cannot be null.");
+        ArgumentAssert.isTrue(containsState(state), "State is not apart of state machine.");
+        return addListener(exitListeners, state, listener);
+    }
+
+    /**
+     * Adds the listener that is notified only when state machine goes into specified state.
+     *
+     * @param state the state; can't be null.
+     * @param listener the listener; can't be null.
+     * @return {@code true} if listener is added.
+     */
+    public boolean addStateEnterListener(State state, StateChangeListener listener) {
+        ArgumentAssert.isNotNull(state, "State cannot be null.");
+        ArgumentAssert.isTrue(containsState(state), "State is not apart of state machine.");
+        return addListener(enterListeners, state, listener);
+    }
+
+    /**
+     * Adds the listener that is notified only when state machine makes specified transition.
+     *
+     * @param transition the transition; can't be null.
+     * @param listener the listener; can't be null.
+     * @return {@code true} if listener is added.
+     */
+    public boolean addTransitionListener(Transition transition, StateChangeListener listener) {
+        ArgumentAssert.isNotNull(transition, "Transition cannot be null.");
+        ArgumentAssert.isTrue(transitions.containsKey(transition), "Transition is not apart of state machine.");
+        return addListener(transitionListeners, transition, listener);
+    }
+
+    private <K> boolean addListener(Map<K, List<StateChangeListener>> listeners, K key, StateChangeListener listener) {
+        ArgumentAssert.isNotNull(listener, "Listener cannot be null.");
+
+        List<StateChangeListener> list = listeners.get(key);
+        if (list == null) {
+            list = new ArrayList<StateChangeListener>();
+            listeners.put(key, list);
         }
+        listenerTable = null;
+        return list.add(listener);
     }
 }
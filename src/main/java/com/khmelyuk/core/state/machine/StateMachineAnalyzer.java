@@ -0,0 +1,341 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.Pair;
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The utils to analyze and reduce the state machine definition.
+ * <br/>
+ * Unreachable states are the states that can't be reached from the initial state
+ * with any transition. The state machine is minimizable if all its transitions
+ * use {@link EqualsCondition} or {@link ElseCondition} only, and there are no state
+ * or transition actions. Equivalent states of such machine, that is states that
+ * are both acceptable or not and lead to equivalent states for any input,
+ * are merged into one by the partition refinement.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineAnalyzer {
+
+    /**
+     * Finds the states that can't be reached from the initial state.
+     *
+     * @param machine the state machine; can't be null.
+     * @return the unreachable states in order they were added to the state machine.
+     * @throws IllegalStateException if initial state is not specified.
+     */
+    public static Set<State> findUnreachableStates(StateMachine machine) {
+        Set<State> reachable = findReachableStates(machine);
+        Set<State> result = new LinkedHashSet<State>();
+        for (State each : machine.getStates()) {
+            if (!reachable.contains(each)) {
+                result.add(each);
+            }
+        }
+        return result;
+    }
+
+    private static Set<State> findReachableStates(StateMachine machine) {
+        ArgumentAssert.isNotNull(machine, "State machine can't be null.");
+        StateAssert.isNotNull(machine.getInitialState(), "Initial state is not specified.");
+
+        Map<State, List<State>> targets = new HashMap<State, List<State>>();
+        for (Pair<State, State> each : machine.getTransitionsWithStates().values()) {
+            List<State> stateTargets = targets.get(each.getFirst());
+            if (stateTargets == null) {
+                stateTargets = new ArrayList<State>();
+                targets.put(each.getFirst(), stateTargets);
+            }
+            stateTargets.add(each.getSecond());
+        }
+
+        Set<State> reachable = new HashSet<State>();
+        List<State> queue = new ArrayList<State>();
+        queue.add(machine.getInitialState());
+        reachable.add(machine.getInitialState());
+        for (int i = 0; i < queue.size(); i++) {
+            List<State> stateTargets = targets.get(queue.get(i));
+            if (stateTargets != null) {
+                for (State each : stateTargets) {
+                    if (reachable.add(each)) {
+                        queue.add(each);
+                    }
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Checks whether the equivalent states of the state machine can be merged.
+     *
+     * @param machine the state machine; can't be null.
+     * @return {@code true} if state machine uses only equals and else conditions and has no actions.
+     */
+    public static boolean isMinimizable(StateMachine machine) {
+        ArgumentAssert.isNotNull(machine, "State machine can't be null.");
+        for (State each : machine.getStates()) {
+            if (each.getEntryAction() != null || each.getExitAction() != null) {
+                return false;
+            }
+        }
+        for (Transition each : machine.getTransitions()) {
+            Class conditionClass = each.getCondition().getClass();
+            if (each.getAction() != null) {
+                return false;
+            }
+            if (conditionClass != EqualsCondition.class && conditionClass != ElseCondition.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the new state machine without unreachable states, and with equivalent
+     * states merged if state machine is minimizable. The new state machine uses the same
+     * state and transition objects, and behaves the same for any input.
+     * Listeners are not copied.
+     *
+     * @param machine the state machine; can't be null.
+     * @return the reduced state machine.
+     * @throws IllegalStateException if initial state is not specified.
+     * @see #isMinimizable(StateMachine)
+     */
+    public static StateMachine minimize(StateMachine machine) {
+        Set<State> reachable = findReachableStates(machine);
+
+        List<State> states = new ArrayList<State>(reachable.size());
+        Map<State, Integer> indexes = new HashMap<State, Integer>(reachable.size() * 2);
+        for (State each : machine.getStates()) {
+            if (reachable.contains(each)) {
+                indexes.put(each, states.size());
+                states.add(each);
+            }
+        }
+
+        int size = states.size();
+        List<List<Transition>> transitions = new ArrayList<List<Transition>>(size);
+        int[][] targets = new int[size][];
+        List<List<Integer>> targetLists = new ArrayList<List<Integer>>(size);
+        for (int i = 0; i < size; i++) {
+            transitions.add(new ArrayList<Transition>());
+            targetLists.add(new ArrayList<Integer>());
+        }
+        for (Map.Entry<Transition, Pair<State, State>> each : machine.getTransitionsWithStates().entrySet()) {
+            Integer from = indexes.get(each.getValue().getFirst());
+            if (from != null) {
+                transitions.get(from).add(each.getKey());
+                targetLists.get(from).add(indexes.get(each.getValue().getSecond()));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            List<Integer> stateTargets = targetLists.get(i);
+            targets[i] = new int[stateTargets.size()];
+            for (int j = 0; j < targets[i].length; j++) {
+                targets[i][j] = stateTargets.get(j);
+            }
+        }
+
+        boolean[] acceptable = new boolean[size];
+        for (State each : machine.getAcceptableStates()) {
+            Integer index = indexes.get(each);
+            if (index != null) {
+                acceptable[index] = true;
+            }
+        }
+
+        int initial = indexes.get(machine.getInitialState());
+        int[] classes = (isMinimizable(machine) ?
+                findEquivalenceClasses(transitions, targets, acceptable) :
+                identityClasses(size));
+
+        return buildMachine(states, transitions, targets, acceptable, initial, classes);
+    }
+
+    private static int[] identityClasses(int size) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /**
+     * Splits states into classes of equivalent states. Initially states are split into
+     * acceptable and not acceptable, and then each class is split by the classes of states
+     * the transitions lead to, until the number of classes doesn't change.
+     * <br/>
+     * For equals and else conditions, the state leads to the target of the first equals
+     * transition for the value, to the target of the first else transition for other values,
+     * or stays in the same state if there is no else transition.
+     */
+    private static int[] findEquivalenceClasses(List<List<Transition>> transitions, int[][] targets, boolean[] acceptable) {
+        int size = targets.length;
+
+        int[] defaults = new int[size];
+        List<Map<Object, Integer>> explicit = new ArrayList<Map<Object, Integer>>(size);
+        for (int i = 0; i < size; i++) {
+            defaults[i] = -1;
+            Map<Object, Integer> stateExplicit = new LinkedHashMap<Object, Integer>();
+            List<Transition> stateTransitions = transitions.get(i);
+            for (int j = 0; j < stateTransitions.size(); j++) {
+                TransitionCondition condition = stateTransitions.get(j).getCondition();
+                if (condition instanceof EqualsCondition) {
+                    Object value = ((EqualsCondition) condition).getConditionValue();
+                    if (!stateExplicit.containsKey(value)) {
+                        stateExplicit.put(value, targets[i][j]);
+                    }
+                }
+                else if (defaults[i] == -1) {
+                    defaults[i] = targets[i][j];
+                }
+            }
+            if (defaults[i] == -1) {
+                defaults[i] = i;
+            }
+            explicit.add(stateExplicit);
+        }
+
+        boolean hasAcceptable = false;
+        boolean hasNotAcceptable = false;
+        for (int i = 0; i < size; i++) {
+            hasAcceptable |= acceptable[i];
+            hasNotAcceptable |= !acceptable[i];
+        }
+        int count = (hasAcceptable ? 1 : 0) + (hasNotAcceptable ? 1 : 0);
+        int[] classes = new int[size];
+        for (int i = 0; i < size; i++) {
+            classes[i] = (acceptable[i] && hasNotAcceptable ? 1 : 0);
+        }
+
+        while (true) {
+            Map<Signature, Integer> signatures = new HashMap<Signature, Integer>(size * 2);
+            int[] newClasses = new int[size];
+            for (int i = 0; i < size; i++) {
+                int defaultClass = classes[defaults[i]];
+                Map<Object, Integer> stateExplicit = new HashMap<Object, Integer>();
+                for (Map.Entry<Object, Integer> each : explicit.get(i).entrySet()) {
+                    int targetClass = classes[each.getValue()];
+                    if (targetClass != defaultClass) {
+                        stateExplicit.put(each.getKey(), targetClass);
+                    }
+                }
+
+                Signature signature = new Signature(classes[i], defaultClass, stateExplicit);
+                Integer newClass = signatures.get(signature);
+                if (newClass == null) {
+                    newClass = signatures.size();
+                    signatures.put(signature, newClass);
+                }
+                newClasses[i] = newClass;
+            }
+
+            classes = newClasses;
+            if (signatures.size() == count) {
+                return classes;
+            }
+            count = signatures.size();
+        }
+    }
+
+    private static StateMachine buildMachine(List<State> states, List<List<Transition>> transitions,
+                                             int[][] targets, boolean[] acceptable, int initial, int[] classes) {
+        int size = states.size();
+
+        int[] representatives = new int[size];
+        for (int i = 0; i < size; i++) {
+            representatives[i] = -1;
+        }
+        representatives[classes[initial]] = initial;
+        for (int i = 0; i < size; i++) {
+            if (representatives[classes[i]] == -1) {
+                representatives[classes[i]] = i;
+            }
+        }
+
+        StateMachineBuilder builder = new StateMachineBuilder(size);
+        for (int i = 0; i < size; i++) {
+            if (representatives[classes[i]] == i) {
+                builder.addState(states.get(i));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (representatives[classes[i]] == i) {
+                List<Transition> stateTransitions = transitions.get(i);
+                for (int j = 0; j < stateTransitions.size(); j++) {
+                    State target = states.get(representatives[classes[targets[i][j]]]);
+                    builder.addTransition(states.get(i), target, stateTransitions.get(j));
+                }
+                if (acceptable[i]) {
+                    builder.addAcceptableState(states.get(i));
+                }
+            }
+        }
+        builder.setInitialState(states.get(initial));
+
+        return builder.build();
+    }
+
+    /**
+     * The state class, the class of the default target and the classes of explicit
+     * targets that differ from the default one.
+     */
+    private static final class Signature {
+
+        private final int stateClass;
+        private final int defaultClass;
+        private final Map<Object, Integer> explicit;
+
+        private Signature(int stateClass, int defaultClass, Map<Object, Integer> explicit) {
+            this.stateClass = stateClass;
+            this.defaultClass = defaultClass;
+            this.explicit = explicit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Signature)) return false;
+            Signature other = (Signature) obj;
+            return stateClass == other.stateClass
+                    && defaultClass == other.defaultClass
+                    && explicit.equals(other.explicit);
+        }
+
+        @Override
+        public int hashCode() {
+            return (stateClass * 31 + defaultClass) * 31 + explicit.hashCode();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.Pair;
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The builder of the large state machines. Unlike {@link StateMachine}, builder keeps
+ * the hash indexes of states and transitions, so each state or transition is added
+ * in constant time. The validation is the same as in {@link StateMachine}
+ * and fails with the same exceptions.
+ * <br/>
+ * Builder is not thread-safe. Each call of {@link #build()} creates a new state machine.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineBuilder {
+
+    private final List<State> states;
+    private final Set<State> statesIndex;
+    private final LinkedHashMap<Transition, Pair<State, State>> transitions;
+    private final List<State> acceptableStates = new ArrayList<State>();
+    private State initialState;
+
+    public StateMachineBuilder() {
+        this(16);
+    }
+
+    public StateMachineBuilder(int size) {
+        ArgumentAssert.isTrue(size >= 0, "Size can't be negative.");
+        states = new ArrayList<State>(size);
+        statesIndex = new HashSet<State>(size * 2);
+        transitions = new LinkedHashMap<Transition, Pair<State, State>>(size * 4);
+    }
+
+    public State addState(State state) {
+        ArgumentAssert.isNotNull(state, "Cannot add state, because it is null.");
+        ArgumentAssert.isTrue(statesIndex.add(state), "Cannot add the duplicated state.");
+        states.add(state);
+        return state;
+    }
+
+    public Transition addTransition(State stateFrom, State stateTo, Transition transition) {
+        ArgumentAssert.isNotNull(stateFrom, "State from cannot be null.");
+        ArgumentAssert.isNotNull(stateTo, "State to cannot be null.");
+        ArgumentAssert.isNotNull(transition, "Transition cannot be null.");
+
+        ArgumentAssert.isTrue(containsState(stateFrom), "State from is not apart of state machine.");
+        ArgumentAssert.isTrue(containsState(stateTo), "State to is not apart of state machine.");
+
+        Pair<State, State> existing = transitions.get(transition);
+        if (existing == null) {
+            transitions.put(transition, new Pair<State, State>(stateFrom, stateTo));
+        }
+        else if (existing.getFirst().equals(stateFrom) && existing.getSecond().equals(stateTo)) {
+            StateAssert.fail("Cannot add duplicate transition. " +
+                    "Such transition for such states already exists.");
+        }
+        return transition;
+    }
+
+    public State addAcceptableState(State state) {
+        ArgumentAssert.isNotNull(state, "State cannot be null.");
+        StateAssert.isTrue(containsState(state), "State cannot be add as acceptable, " +
+                "because it is not in list of states");
+        acceptableStates.add(state);
+        return state;
+    }
+
+    public boolean setInitialState(State state) {
+        ArgumentAssert.isNotNull(state, "Initial state cannot be null.");
+        if (initialState == null || !initialState.equals(state)) {
+            if (containsState(state)) {
+                initialState = state;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean containsState(State state) {
+        return statesIndex.contains(state);
+    }
+
+    public int getStatesCount() {
+        return states.size();
+    }
+
+    public int getTransitionsCount() {
+        return transitions.size();
+    }
+
+    /**
+     * Creates the state machine with the added states and transitions.
+     *
+     * @return the new state machine.
+     */
+    public StateMachine build() {
+        return new StateMachine(
+                new ArrayList<State>(states),
+                new LinkedHashMap<Transition, Pair<State, State>>(transitions),
+                new ArrayList<State>(acceptableStates),
+                initialState);
+    }
+
+    /**
+     * Creates the immutable definition with the added states and transitions.
+     *
+     * @return the new state machine definition.
+     * @throws IllegalStateException if initial state is not specified.
+     */
+    public StateMachineDefinition buildDefinition() {
+        return build().createDefinition();
+    }
+}
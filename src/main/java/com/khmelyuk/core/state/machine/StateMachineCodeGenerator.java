@@ -0,0 +1,494 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The generator of the Java source of the class that extends {@link GeneratedStateMachine}
+ * and finds transitions with {@code switch} statements on the state ordinal and input value,
+ * so the transition lookup doesn't call conditions through the interface.
+ * <br/>
+ * The code is generated for exact {@link EqualsCondition} with {@code String}, {@code Integer},
+ * public enum or {@code null} value, for {@link RangeCondition} and for {@link ElseCondition}.
+ * Other conditions are checked by calling the condition of the definition.
+ * The first matching transition is selected like in {@link StateMachine}.
+ * The generated constructor checks that each literal of the generated code
+ * is the same as the condition value of the definition.
+ * <br/>
+ * The generated class is Java 5 compatible. It is run by the build with the state machine
+ * description, and the result is compiled together with the application sources.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineCodeGenerator {
+
+    /**
+     * The number of states in one dispatch method, so generated methods are not too big.
+     */
+    private static final int STATES_PER_METHOD = 1024;
+
+    /**
+     * The number of literal checks in one method, so generated methods are not too big.
+     */
+    private static final int CHECKS_PER_METHOD = 1024;
+
+    /**
+     * Generates the source of the state machine class.
+     *
+     * @param machine the state machine to generate class for; can't be null.
+     * @param packageName the package of the class; empty for default package.
+     * @param className the simple name of the class; can't be empty.
+     * @return the Java source of the class.
+     */
+    public String generate(StateMachine machine, String packageName, String className) {
+        ArgumentAssert.isNotNull(machine, "State machine cannot be null.");
+        ArgumentAssert.isNotNull(packageName, "Package name cannot be null.");
+        ArgumentAssert.isNotEmpty(className, "Class name cannot be empty.");
+
+        StateMachineDefinition definition = machine.createDefinition();
+        Source out = new Source();
+
+        out.line("// Generated by " + getClass().getSimpleName() + ", do not edit.");
+        if (packageName.length() > 0) {
+            out.line("package " + packageName + ";");
+        }
+        out.line();
+        out.line("import com.khmelyuk.core.state.machine.GeneratedStateMachine;");
+        out.line("import com.khmelyuk.core.state.machine.StateMachineDefinition;");
+        out.line();
+        out.line("import java.io.Serializable;");
+        out.line();
+        out.line("public final class " + className + " extends GeneratedStateMachine {");
+        out.line();
+        out.line(1, "public static final long FINGERPRINT = " + definition.getFingerprint() + "L;");
+        out.line();
+        List<String> checks = literalChecks(definition);
+        int checkMethods = (checks.size() + CHECKS_PER_METHOD - 1) / CHECKS_PER_METHOD;
+        out.line(1, "public " + className + "(StateMachineDefinition definition) {");
+        out.line(2, "super(definition, FINGERPRINT);");
+        for (int i = 0; i < checkMethods; i++) {
+            out.line(2, "checkLiterals" + i + "();");
+        }
+        out.line(1, "}");
+        for (int i = 0; i < checkMethods; i++) {
+            out.line();
+            out.line(1, "private void checkLiterals" + i + "() {");
+            for (String each : checks.subList(i * CHECKS_PER_METHOD, Math.min(checks.size(), (i + 1) * CHECKS_PER_METHOD))) {
+                out.line(2, each);
+            }
+            out.line(1, "}");
+        }
+
+        int states = definition.getStatesCount();
+        if (states <= STATES_PER_METHOD) {
+            generateDispatch(out, "findTransition", "protected", 0, states);
+        }
+        else {
+            int methods = (states + STATES_PER_METHOD - 1) / STATES_PER_METHOD;
+            out.line();
+            out.line(1, "protected int findTransition(int state, Serializable input) {");
+            out.line(2, "switch (state / " + STATES_PER_METHOD + ") {");
+            for (int i = 0; i < methods; i++) {
+                out.line(3, "case " + i + ":");
+                out.line(4, "return findTransitionIn" + i + "(state, input);");
+            }
+            out.line(3, "default:");
+            out.line(4, "return -1;");
+            out.line(2, "}");
+            out.line(1, "}");
+            for (int i = 0; i < methods; i++) {
+                generateDispatch(out, "findTransitionIn" + i, "private",
+                        i * STATES_PER_METHOD, Math.min(states, (i + 1) * STATES_PER_METHOD));
+            }
+        }
+
+        for (int i = 0; i < states; i++) {
+            generateState(out, definition, i);
+        }
+        out.line("}");
+
+        return out.toString();
+    }
+
+    /**
+     * Generates the source of the state machine class and writes it to the file
+     * in the package directory under the source directory.
+     *
+     * @param machine the state machine to generate class for; can't be null.
+     * @param packageName the package of the class; empty for default package.
+     * @param className the simple name of the class; can't be empty.
+     * @param sourceDir the root directory of the sources; can't be null.
+     * @return the written file.
+     * @throws IOException error to write file.
+     */
+    public File generate(StateMachine machine, String packageName, String className, File sourceDir) throws IOException {
+        ArgumentAssert.isNotNull(sourceDir, "Source directory cannot be null.");
+        String source = generate(machine, packageName, className);
+
+        File dir = (packageName.length() > 0 ? new File(sourceDir, packageName.replace('.', File.separatorChar)) : sourceDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+
+        File file = new File(dir, className + ".java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(source);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Gets the checks that literals used by generated code are the same as condition values
+     * of the definition, as fingerprint alone doesn't detect the changed value with the same hash code.
+     */
+    private static List<String> literalChecks(StateMachineDefinition definition) {
+        List<String> checks = new ArrayList<String>();
+        for (int state = 0; state < definition.getStatesCount(); state++) {
+            for (int i = 0; i < definition.getTransitionsCount(state); i++) {
+                TransitionCondition condition = definition.getTransition(state, i).getCondition();
+                if (condition.getClass() == EqualsCondition.class) {
+                    Object value = ((EqualsCondition) condition).getConditionValue();
+                    String literal;
+                    if (value == null) {
+                        literal = "null";
+                    }
+                    else if (value instanceof String) {
+                        literal = literal((String) value);
+                    }
+                    else if (value instanceof Integer) {
+                        literal = "Integer.valueOf(" + value + ")";
+                    }
+                    else if (value instanceof Enum && isPublic(((Enum) value).getDeclaringClass())) {
+                        literal = ((Enum) value).getDeclaringClass().getCanonicalName() + "." + ((Enum) value).name();
+                    }
+                    else {
+                        continue;
+                    }
+                    checks.add("checkValue(" + state + ", " + i + ", " + literal + ");");
+                }
+                else if (condition.getClass() == RangeCondition.class) {
+                    RangeCondition range = (RangeCondition) condition;
+                    checks.add("checkRange(" + state + ", " + i + ", "
+                            + literal(range.getLower()) + ", " + range.isLowerInclusive() + ", "
+                            + literal(range.getUpper()) + ", " + range.isUpperInclusive() + ");");
+                }
+            }
+        }
+        return checks;
+    }
+
+    private static void generateDispatch(Source out, String method, String modifier, int from, int to) {
+        out.line();
+        out.line(1, modifier + " int " + method + "(int state, Serializable input) {");
+        out.line(2, "switch (state) {");
+        for (int i = from; i < to; i++) {
+            out.line(3, "case " + i + ":");
+            out.line(4, "return findTransition" + i + "(input);");
+        }
+        out.line(3, "default:");
+        out.line(4, "return -1;");
+        out.line(2, "}");
+        out.line(1, "}");
+    }
+
+    private static void generateState(Source out, StateMachineDefinition definition, int state) {
+        int count = definition.getTransitionsCount(state);
+
+        // exact equals conditions by value type, only the first transition for each value
+        Map<Integer, List<Integer>> strings = new TreeMap<Integer, List<Integer>>();
+        Map<Integer, Integer> integers = new TreeMap<Integer, Integer>();
+        Map<String, Map<String, Integer>> enums = new TreeMap<String, Map<String, Integer>>();
+        int nullTransition = -1;
+        Set<Object> values = new HashSet<Object>();
+        boolean[] generated = new boolean[count];
+        boolean hasRanges = false;
+
+        for (int i = 0; i < count; i++) {
+            TransitionCondition condition = definition.getTransition(state, i).getCondition();
+            if (condition.getClass() == EqualsCondition.class) {
+                Object value = ((EqualsCondition) condition).getConditionValue();
+                if (value == null) {
+                    generated[i] = true;
+                    if (nullTransition == -1) {
+                        nullTransition = i;
+                    }
+                }
+                else if (value instanceof String) {
+                    generated[i] = true;
+                    if (values.add(value)) {
+                        List<Integer> sameHash = strings.get(value.hashCode());
+                        if (sameHash == null) {
+                            sameHash = new ArrayList<Integer>();
+                            strings.put(value.hashCode(), sameHash);
+                        }
+                        sameHash.add(i);
+                    }
+                }
+                else if (value instanceof Integer) {
+                    generated[i] = true;
+                    if (values.add(value)) {
+                        integers.put((Integer) value, i);
+                    }
+                }
+                else if (value instanceof Enum && isPublic(((Enum) value).getDeclaringClass())) {
+                    generated[i] = true;
+                    if (values.add(value)) {
+                        String enumClass = ((Enum) value).getDeclaringClass().getCanonicalName();
+                        Map<String, Integer> constants = enums.get(enumClass);
+                        if (constants == null) {
+                            constants = new TreeMap<String, Integer>();
+                            enums.put(enumClass, constants);
+                        }
+                        constants.put(((Enum) value).name(), i);
+                    }
+                }
+            }
+            else if (condition.getClass() == RangeCondition.class) {
+                hasRanges = true;
+            }
+        }
+
+        out.line();
+        out.line(1, "// " + comment(definition.getState(state).getState()));
+        out.line(1, "private int findTransition" + state + "(Serializable input) {");
+        boolean hasEquals = (!strings.isEmpty() || !integers.isEmpty() || !enums.isEmpty() || nullTransition != -1);
+        if (hasEquals) {
+            out.line(2, "int found = -1;");
+        }
+
+        boolean first = true;
+        if (!strings.isEmpty()) {
+            out.line(2, "if (input instanceof String) {");
+            out.line(3, "String value = (String) input;");
+            out.line(3, "switch (value.hashCode()) {");
+            for (Map.Entry<Integer, List<Integer>> each : strings.entrySet()) {
+                out.line(4, "case " + each.getKey() + ":");
+                String prefix = "if";
+                for (Integer transition : each.getValue()) {
+                    Object value = ((EqualsCondition) definition.getTransition(state, transition).getCondition()).getConditionValue();
+                    out.line(5, prefix + " (value.equals(" + literal((String) value) + ")) {");
+                    out.line(6, "found = " + transition + ";");
+                    prefix = "}\n" + indent(5) + "else if";
+                }
+                out.line(5, "}");
+                out.line(5, "break;");
+            }
+            out.line(3, "}");
+            out.line(2, "}");
+            first = false;
+        }
+        if (!integers.isEmpty()) {
+            out.line(2, (first ? "" : "else ") + "if (input instanceof Integer) {");
+            out.line(3, "switch (((Integer) input).intValue()) {");
+            for (Map.Entry<Integer, Integer> each : integers.entrySet()) {
+                out.line(4, "case " + each.getKey() + ":");
+                out.line(5, "found = " + each.getValue() + ";");
+                out.line(5, "break;");
+            }
+            out.line(3, "}");
+            out.line(2, "}");
+            first = false;
+        }
+        for (Map.Entry<String, Map<String, Integer>> eachEnum : enums.entrySet()) {
+            out.line(2, (first ? "" : "else ") + "if (input instanceof " + eachEnum.getKey() + ") {");
+            out.line(3, "switch ((" + eachEnum.getKey() + ") input) {");
+            for (Map.Entry<String, Integer> each : eachEnum.getValue().entrySet()) {
+                out.line(4, "case " + each.getKey() + ":");
+                out.line(5, "found = " + each.getValue() + ";");
+                out.line(5, "break;");
+            }
+            out.line(3, "}");
+            out.line(2, "}");
+            first = false;
+        }
+        if (nullTransition != -1) {
+            out.line(2, (first ? "" : "else ") + "if (input == null) {");
+            out.line(3, "found = " + nullTransition + ";");
+            out.line(2, "}");
+        }
+
+        if (hasRanges) {
+            // NaN doesn't match any range, like non-number input
+            out.line(2, "double number = (input instanceof Number ? ((Number) input).doubleValue() : Double.NaN);");
+        }
+
+        for (int i = 0; i < count; i++) {
+            TransitionCondition condition = definition.getTransition(state, i).getCondition();
+            if (generated[i] || condition instanceof ElseCondition) {
+                continue;
+            }
+            String check;
+            if (condition.getClass() == RangeCondition.class) {
+                RangeCondition range = (RangeCondition) condition;
+                check = "number " + (range.isLowerInclusive() ? ">=" : ">") + " " + literal(range.getLower())
+                        + " && number " + (range.isUpperInclusive() ? "<=" : "<") + " " + literal(range.getUpper());
+            }
+            else {
+                check = "match(" + state + ", " + i + ", input)";
+            }
+            out.line(2, "if (" + (hasEquals ? "(found == -1 || found > " + i + ") && " : "") + check + ") {");
+            out.line(3, "return " + i + ";");
+            out.line(2, "}");
+        }
+        if (hasEquals) {
+            out.line(2, "if (found != -1) {");
+            out.line(3, "return found;");
+            out.line(2, "}");
+        }
+
+        // else transitions are the last ones
+        for (int i = 0; i < count; i++) {
+            TransitionCondition condition = definition.getTransition(state, i).getCondition();
+            if (condition.getClass() == ElseCondition.class) {
+                out.line(2, "return " + i + ";");
+                out.line(1, "}");
+                return;
+            }
+            if (condition instanceof ElseCondition) {
+                out.line(2, "if (match(" + state + ", " + i + ", input)) {");
+                out.line(3, "return " + i + ";");
+                out.line(2, "}");
+            }
+        }
+        out.line(2, "return -1;");
+        out.line(1, "}");
+    }
+
+    private static boolean isPublic(Class type) {
+        for (Class each = type; each != null; each = each.getEnclosingClass()) {
+            if (!Modifier.isPublic(each.getModifiers())) {
+                return false;
+            }
+        }
+        return type.getCanonicalName() != null;
+    }
+
+    private static String literal(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "Double.POSITIVE_INFINITY";
+        }
+        if (value == Double.NEGATIVE_INFINITY) {
+            return "Double.NEGATIVE_INFINITY";
+        }
+        return Double.toString(value);
+    }
+
+    private static String literal(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2);
+        result.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                result.append('\\').append(ch);
+            }
+            else if (ch == '\n') {
+                result.append("\\n");
+            }
+            else if (ch == '\r') {
+                result.append("\\r");
+            }
+            else if (ch == '\t') {
+                result.append("\\t");
+            }
+            else if (ch == '\b') {
+                result.append("\\b");
+            }
+            else if (ch == '\f') {
+                result.append("\\f");
+            }
+            else if (ch < 0x20 || ch == 0x7f) {
+                // unicode escapes of line terminators end the literal, so use octal escapes
+                result.append(String.format("\\%03o", (int) ch));
+            }
+            else if (ch > 0x7f) {
+                result.append(String.format("\\u%04x", (int) ch));
+            }
+            else {
+                result.append(ch);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private static String comment(Object value) {
+        String text = String.valueOf(value);
+        StringBuilder result = new StringBuilder(text.length() + 7);
+        result.append("state ");
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            // backslash is replaced too, as unicode escapes are processed in comments
+            result.append(ch < 0x20 || ch > 0x7e || ch == '\\' ? '?' : ch);
+        }
+        return result.toString();
+    }
+
+    private static String indent(int level) {
+        StringBuilder result = new StringBuilder(level * 4);
+        for (int i = 0; i < level; i++) {
+            result.append("    ");
+        }
+        return result.toString();
+    }
+
+    /**
+     * The source code with indented lines.
+     */
+    private static final class Source {
+
+        private final StringBuilder text = new StringBuilder();
+
+        void line() {
+            text.append('\n');
+        }
+
+        void line(String line) {
+            text.append(line).append('\n');
+        }
+
+        void line(int level, String line) {
+            text.append(indent(level)).append(line).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
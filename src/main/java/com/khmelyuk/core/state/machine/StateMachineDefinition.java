@@ -0,0 +1,364 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TimeoutCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable definition of the state machine: states, transitions, initial
+ * and acceptable states and listeners. It is built once, usually with
+ * {@link StateMachine#createDefinition()}, and shared by many {@link StateMachineInstance}
+ * objects, each of them holds only the current state and progress flag.
+ * <br/>
+ * Definition is thread-safe, so instances of the same definition can be driven
+ * by different threads. Note, that actions and listeners are shared by all instances
+ * and must be thread-safe in this case too.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class StateMachineDefinition {
+
+    private final TransitionTable table;
+    private final int initialState;
+    private final boolean[] acceptableStates;
+    private final ListenerTable listeners;
+    private final TimeoutCondition[] timeouts;
+    private final long fingerprint;
+
+    StateMachineDefinition(TransitionTable table, State initialState,
+                           Collection<State> acceptableStates,
+                           ListenerTable listeners) {
+        ArgumentAssert.isNotNull(table, "Transition table can't be null.");
+        ArgumentAssert.isNotNull(initialState, "Initial state can't be null.");
+
+        this.table = table;
+        this.initialState = table.indexOf(initialState);
+        ArgumentAssert.isTrue(this.initialState != -1, "Initial state is not a part of state machine.");
+
+        this.acceptableStates = new boolean[table.size()];
+        for (State eachState : acceptableStates) {
+            int index = table.indexOf(eachState);
+            ArgumentAssert.isTrue(index != -1, "Acceptable state is not a part of state machine.");
+            this.acceptableStates[index] = true;
+        }
+
+        this.listeners = listeners;
+
+        this.timeouts = new TimeoutCondition[table.size()];
+        for (int i = 0; i < table.size(); i++) {
+            for (int j = 0; j < table.getTransitionsCount(i); j++) {
+                if (table.getTransition(i, j).getCondition() instanceof TimeoutCondition) {
+                    TimeoutCondition timeout = (TimeoutCondition) table.getTransition(i, j).getCondition();
+                    if (timeouts[i] == null || timeouts[i].getTimeout() > timeout.getTimeout()) {
+                        timeouts[i] = timeout;
+                    }
+                }
+            }
+        }
+
+        this.fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of states, transitions, initial and acceptable states.
+     * The class names and hash codes of state values and values of {@code EqualsCondition} are used,
+     * so hash codes should be the same in different JVMs, like hash codes of strings,
+     * numbers and enum names are. Other conditions are hashed by their parameters if known,
+     * or by their hash codes if their classes override {@code hashCode()}.
+     */
+    private long computeFingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = fingerprint(hash, table.size());
+        hash = fingerprint(hash, initialState);
+        for (int i = 0; i < table.size(); i++) {
+            hash = fingerprintValue(hash, table.getState(i).getState());
+            hash = fingerprint(hash, acceptableStates[i] ? 1 : 0);
+
+            for (int j = 0; j < table.getTransitionsCount(i); j++) {
+                TransitionCondition condition = table.getTransition(i, j).getCondition();
+                hash = fingerprint(hash, table.getTarget(i, j));
+                hash = fingerprint(hash, condition.getClass().getName().hashCode());
+                if (condition instanceof EqualsCondition) {
+                    hash = fingerprintValue(hash, ((EqualsCondition) condition).getConditionValue());
+                }
+                else if (condition instanceof TimeoutCondition) {
+                    long timeout = ((TimeoutCondition) condition).getTimeout();
+                    hash = fingerprint(hash, (int) (timeout ^ (timeout >>> 32)));
+                }
+                else if (condition instanceof RangeCondition) {
+                    RangeCondition range = (RangeCondition) condition;
+                    hash = fingerprint(hash, Double.valueOf(range.getLower()).hashCode());
+                    hash = fingerprint(hash, Double.valueOf(range.getUpper()).hashCode());
+                    hash = fingerprint(hash, (range.isLowerInclusive() ? 2 : 0) | (range.isUpperInclusive() ? 1 : 0));
+                }
+                else if (hasValueHashCode(condition)) {
+                    hash = fingerprint(hash, condition.hashCode());
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static long fingerprintValue(long hash, Object value) {
+        if (value == null) {
+            return fingerprint(hash, 0);
+        }
+        if (value instanceof Enum) {
+            // enum hash code is identity based, so use name instead
+            Enum enumValue = (Enum) value;
+            hash = fingerprint(hash, enumValue.getDeclaringClass().getName().hashCode());
+            return fingerprint(hash, enumValue.name().hashCode());
+        }
+        hash = fingerprint(hash, value.getClass().getName().hashCode());
+        return fingerprint(hash, value.hashCode());
+    }
+
+    /**
+     * Checks whether condition class overrides identity based {@code hashCode()}.
+     */
+    private static boolean hasValueHashCode(TransitionCondition condition) {
+        try {
+            return condition.getClass().getMethod("hashCode").getDeclaringClass() != Object.class;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static long fingerprint(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the fingerprint of this definition. Definitions with the same states and transitions
+     * have the same fingerprint, so it is used to check that snapshot matches the definition.
+     *
+     * @return the definition fingerprint.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Creates a new not started instance of the state machine with this definition.
+     *
+     * @return the new state machine instance.
+     */
+    public StateMachineInstance newInstance() {
+        return new StateMachineInstance(this);
+    }
+
+    /**
+     * Creates a new store for many instances of the state machine with this definition.
+     * All instances in the store are not started.
+     *
+     * @param capacity the initial number of slots in the store.
+     * @return the new state machine store.
+     */
+    public StateMachineStore newStore(int capacity) {
+        return new StateMachineStore(this, capacity);
+    }
+
+    public List<State> getStates() {
+        List<State> result = new ArrayList<State>(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            result.add(table.getState(i));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public Collection<State> getAcceptableStates() {
+        List<State> result = new ArrayList<State>();
+        for (int i = 0; i < acceptableStates.length; i++) {
+            if (acceptableStates[i]) {
+                result.add(table.getState(i));
+            }
+        }
+        return Collections.unmodifiableCollection(result);
+    }
+
+    public State getInitialState() {
+        return table.getState(initialState);
+    }
+
+    public boolean containsState(State state) {
+        return table.indexOf(state) != -1;
+    }
+
+    /**
+     * Gets the number of states in the definition.
+     * @return the number of states.
+     */
+    public int getStatesCount() {
+        return table.size();
+    }
+
+    /**
+     * Gets the number of transitions in the definition.
+     * @return the number of transitions.
+     */
+    public int getTransitionsCount() {
+        return table.getTransitionsCount();
+    }
+
+    /**
+     * Gets the ordinal of the state, that is its position in the list of states.
+     *
+     * @param state the state.
+     * @return the state ordinal or -1 if state is not a part of the definition.
+     */
+    public int indexOf(State state) {
+        return table.indexOf(state);
+    }
+
+    /**
+     * Gets the state by its ordinal.
+     *
+     * @param index the state ordinal.
+     * @return the state.
+     */
+    public State getState(int index) {
+        return table.getState(index);
+    }
+
+    int getInitialStateIndex() {
+        return initialState;
+    }
+
+    boolean isAcceptable(int state) {
+        return acceptableStates[state];
+    }
+
+    /**
+     * Gets the condition of the state transition with the shortest timeout.
+     *
+     * @param state the state index.
+     * @return the timeout condition or {@code null} if state has no timed transitions.
+     */
+    TimeoutCondition getTimeout(int state) {
+        return timeouts[state];
+    }
+
+    boolean hasTransitions(int state) {
+        return table.hasTransitions(state);
+    }
+
+    /**
+     * Finds the transition from the state for the input.
+     *
+     * @param state the index of the current state.
+     * @param input the input value.
+     * @return the index of the transition within the state transitions, or -1 if there is no such transition.
+     */
+    int findTransition(int state, Serializable input) {
+        return table.findTransition(state, input);
+    }
+
+    /**
+     * Makes the transition: runs actions without notifying listeners.
+     * The caller commits the returned state first and notifies listeners then,
+     * so a failed listener doesn't leave the caller in the old state.
+     *
+     * @param state the index of the current state.
+     * @param transition the index of the transition within the state transitions.
+     * @return the index of the new state.
+     * @see #notifyTransition(int, int, int)
+     */
+    int fire(int state, int transition) {
+        return table.fire(state, transition);
+    }
+
+    /**
+     * Notifies listeners about the made transition.
+     *
+     * @param state the index of the previous state.
+     * @param transition the index of the transition within the state transitions.
+     * @param nextState the index of the new state.
+     */
+    void notifyTransition(int state, int transition, int nextState) {
+        listeners.notify(state, transition, table.getState(state), table.getState(nextState));
+    }
+
+    /**
+     * Gets the transition of the state.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the transition.
+     */
+    Transition getTransition(int state, int transition) {
+        return table.getTransition(state, transition);
+    }
+
+    /**
+     * Gets the number of outgoing transitions of the state.
+     *
+     * @param state the state index.
+     * @return the number of transitions.
+     */
+    int getTransitionsCount(int state) {
+        return table.getTransitionsCount(state);
+    }
+
+    /**
+     * Gets the index of the state the transition leads to.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the index of the target state.
+     */
+    int getTarget(int state, int transition) {
+        return table.getTarget(state, transition);
+    }
+
+    /**
+     * Gets the ordinal of the transition, that is its position in the list of all transitions.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the transition ordinal.
+     */
+    int getTransitionOrdinal(int state, int transition) {
+        return table.getTransitionOrdinal(state, transition);
+    }
+
+    /**
+     * Notifies listeners about the state change made by many transitions.
+     *
+     * @param fromState the index of the state before changes.
+     * @param toState the index of the state after changes.
+     */
+    void notifyStateChangeListeners(int fromState, int toState) {
+        listeners.notifyChange(fromState, toState, table.getState(fromState), table.getState(toState));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+import com.khmelyuk.core.utils.ObjectUtils;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+/**
+ * The lightweight runtime of the state machine with shared {@link StateMachineDefinition}.
+ * Instance holds only the reference to the definition, the current state ordinal
+ * and the progress flag.
+ * <br/>
+ * Instance is not thread-safe, but different instances of the same definition
+ * can be used by different threads.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class StateMachineInstance {
+
+    private final StateMachineDefinition definition;
+    private int currentState = -1;
+    private boolean inProgress = false;
+
+    StateMachineInstance(StateMachineDefinition definition) {
+        this.definition = definition;
+    }
+
+    public StateMachineDefinition getDefinition() {
+        return definition;
+    }
+
+    public void start() {
+        StateAssert.isTrue(currentState == -1, "Automate is started already.");
+        currentState = definition.getInitialStateIndex();
+        inProgress = true;
+    }
+
+    public void finish() {
+        StateAssert.isTrue(inProgress, "Automate is not in progress.");
+        StateAssert.isTrue(currentState != -1, "Automate is not started yet.");
+        inProgress = false;
+    }
+
+    public State input(Serializable input) {
+        if (currentState == -1) {
+            return null;
+        }
+        int transition = definition.findTransition(currentState, input);
+        if (transition != -1) {
+            fire(transition, true);
+        }
+        return definition.getState(currentState);
+    }
+
+    /**
+     * Inputs the value and returns the ordinal of the made transition.
+     *
+     * @param input the input value.
+     * @return the ordinal of the transition or -1 if no transition was made.
+     */
+    int inputTransition(Serializable input) {
+        if (currentState == -1) {
+            return -1;
+        }
+        int transition = definition.findTransition(currentState, input);
+        if (transition == -1) {
+            return -1;
+        }
+        int ordinal = definition.getTransitionOrdinal(currentState, transition);
+        fire(transition, true);
+        return ordinal;
+    }
+
+    /**
+     * Makes the transition from the current state. The new state is committed
+     * before listeners are notified, so it is kept even if a listener fails.
+     *
+     * @param transition the index of the transition within the current state transitions.
+     * @param notify whether to notify listeners.
+     */
+    private void fire(int transition, boolean notify) {
+        int state = currentState;
+        currentState = definition.fire(state, transition);
+        if (notify) {
+            definition.notifyTransition(state, transition, currentState);
+        }
+    }
+
+    /**
+     * Restores the state of the instance.
+     *
+     * @param state the ordinal of the current state, or -1 for not started instance.
+     * @param inProgress whether instance is in progress.
+     */
+    void restore(int state, boolean inProgress) {
+        StateAssert.isTrue(state >= -1 && state < definition.getStatesCount(), "Wrong state ordinal.");
+        this.currentState = state;
+        this.inProgress = (state != -1 && inProgress);
+    }
+
+    /**
+     * Processes the sequence of input values in one loop.
+     *
+     * @param inputs the input values; can't be null.
+     * @param options the batch options.
+     * @return the current state after the batch.
+     * @see StateMachine#inputAll(java.util.Iterator, InputOption[])
+     */
+    public State inputAll(Iterable<? extends Serializable> inputs, InputOption... options) {
+        ArgumentAssert.isNotNull(inputs, "Inputs cannot be null.");
+        return inputAll(inputs.iterator(), options);
+    }
+
+    /**
+     * Processes the input values from iterator in one loop.
+     *
+     * @param inputs the iterator of input values; can't be null.
+     * @param options the batch options.
+     * @return the current state after the batch.
+     * @see StateMachine#inputAll(java.util.Iterator, InputOption[])
+     */
+    public State inputAll(Iterator<? extends Serializable> inputs, InputOption... options) {
+        ArgumentAssert.isNotNull(inputs, "Inputs cannot be null.");
+        if (currentState == -1) {
+            return null;
+        }
+
+        boolean notifyOnce = InputOption.contains(options, InputOption.NOTIFY_ONCE);
+        boolean stopOnAcceptable = InputOption.contains(options, InputOption.STOP_ON_ACCEPTABLE);
+        boolean stopOnFinal = InputOption.contains(options, InputOption.STOP_ON_FINAL);
+
+        int batchState = currentState;
+        try {
+            while (inputs.hasNext()) {
+                if (stopOnAcceptable && definition.isAcceptable(currentState)) {
+                    break;
+                }
+                if (stopOnFinal && !definition.hasTransitions(currentState)) {
+                    break;
+                }
+                int transition = definition.findTransition(currentState, inputs.next());
+                if (transition != -1) {
+                    fire(transition, !notifyOnce);
+                }
+            }
+        }
+        finally {
+            if (notifyOnce && batchState != currentState) {
+                definition.notifyStateChangeListeners(batchState, currentState);
+            }
+        }
+        return definition.getState(currentState);
+    }
+
+    public State getCurrentState() {
+        return (currentState != -1 ? definition.getState(currentState) : null);
+    }
+
+    /**
+     * Gets the ordinal of the current state.
+     * @return the current state ordinal or -1 if instance is not started.
+     */
+    public int getCurrentStateIndex() {
+        return currentState;
+    }
+
+    public State getFinishState() {
+        if (!inProgress) {
+            return getCurrentState();
+        }
+        return null;
+    }
+
+    public boolean isSuccess() {
+        return currentState != -1 && definition.isAcceptable(currentState);
+    }
+
+    public boolean isFailed() {
+        return !isSuccess();
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    public boolean isInState(Serializable state) {
+        return ObjectUtils.equals(getCurrentState().getState(), state);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The metrics of the state machine: the number of times each transition was made,
+ * the number of visits and the total time spent in each state, and the latency
+ * histograms of {@link StateAction} and {@link TransitionAction}.
+ * <br/>
+ * Counters are updated without locks, while the {@link #snapshot()} can be taken
+ * periodically from any thread. Metrics are written by the single-threaded
+ * {@link StateMachine}, so they take no more memory than counters themselves.
+ * <br/>
+ * Latency histogram has {@link #BUCKETS} buckets; the bucket {@code i} counts
+ * the durations in range {@code [2^(i-1), 2^i)} nanoseconds, and bucket 0 counts zero durations.
+ * Durations are positive longs, so the last bucket counts durations from {@code 2^62}.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class StateMachineMetrics {
+
+    /**
+     * The number of latency histogram buckets.
+     */
+    public static final int BUCKETS = 64;
+
+    private final TransitionTable table;
+
+    private final int dwellCountOffset;
+    private final int dwellTimeOffset;
+    private final int stateActionOffset;
+    private final int transitionActionOffset;
+
+    private final AtomicLongArray counters;
+
+    /**
+     * Creates the metrics written by the single thread at a time.
+     *
+     * @param table the compiled transition table.
+     */
+    StateMachineMetrics(TransitionTable table) {
+        this.table = table;
+
+        int states = table.size();
+        this.dwellCountOffset = table.getTransitionsCount();
+        this.dwellTimeOffset = dwellCountOffset + states;
+        this.stateActionOffset = dwellTimeOffset + states;
+        this.transitionActionOffset = stateActionOffset + BUCKETS;
+        this.counters = new AtomicLongArray(transitionActionOffset + BUCKETS);
+    }
+
+    TransitionTable getTable() {
+        return table;
+    }
+
+    private static int bucket(long duration) {
+        return duration > 0 ? 64 - Long.numberOfLeadingZeros(duration) : 0;
+    }
+
+    /**
+     * Records the made transition.
+     *
+     * @param ordinal the transition ordinal.
+     */
+    void recordTransition(int ordinal) {
+        counters.incrementAndGet(ordinal);
+    }
+
+    /**
+     * Records the time spent in the state before leaving it.
+     *
+     * @param state the state index.
+     * @param duration the time in nanoseconds.
+     */
+    void recordDwell(int state, long duration) {
+        counters.incrementAndGet(dwellCountOffset + state);
+        counters.addAndGet(dwellTimeOffset + state, duration);
+    }
+
+    void recordStateAction(long duration) {
+        counters.incrementAndGet(stateActionOffset + bucket(duration));
+    }
+
+    void recordTransitionAction(long duration) {
+        counters.incrementAndGet(transitionActionOffset + bucket(duration));
+    }
+
+    /**
+     * Takes the snapshot of the current metric values.
+     * The snapshot is not atomic, so counters updated during the snapshot
+     * may or may not be included.
+     *
+     * @return the metrics snapshot.
+     */
+    public Snapshot snapshot() {
+        Map<Transition, Long> transitionCounts = new IdentityHashMap<Transition, Long>();
+        for (int state = 0; state < table.size(); state++) {
+            for (int slot = 0; slot < table.getTransitionsCount(state); slot++) {
+                long count = counters.get(table.getTransitionOrdinal(state, slot));
+                transitionCounts.put(table.getTransition(state, slot), count);
+            }
+        }
+
+        Map<State, Long> dwellCounts = new HashMap<State, Long>(table.size() * 2);
+        Map<State, Long> dwellTimes = new HashMap<State, Long>(table.size() * 2);
+        for (int state = 0; state < table.size(); state++) {
+            dwellCounts.put(table.getState(state), counters.get(dwellCountOffset + state));
+            dwellTimes.put(table.getState(state), counters.get(dwellTimeOffset + state));
+        }
+
+        long[] stateActionLatencies = new long[BUCKETS];
+        long[] transitionActionLatencies = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            stateActionLatencies[i] = counters.get(stateActionOffset + i);
+            transitionActionLatencies[i] = counters.get(transitionActionOffset + i);
+        }
+
+        return new Snapshot(transitionCounts, dwellCounts, dwellTimes,
+                stateActionLatencies, transitionActionLatencies);
+    }
+
+    /**
+     * The immutable snapshot of the state machine metrics.
+     */
+    public static final class Snapshot {
+
+        private final Map<Transition, Long> transitionCounts;
+        private final Map<State, Long> dwellCounts;
+        private final Map<State, Long> dwellTimes;
+        private final long[] stateActionLatencies;
+        private final long[] transitionActionLatencies;
+
+        private Snapshot(Map<Transition, Long> transitionCounts,
+                         Map<State, Long> dwellCounts, Map<State, Long> dwellTimes,
+                         long[] stateActionLatencies, long[] transitionActionLatencies) {
+            this.transitionCounts = Collections.unmodifiableMap(transitionCounts);
+            this.dwellCounts = Collections.unmodifiableMap(dwellCounts);
+            this.dwellTimes = Collections.unmodifiableMap(dwellTimes);
+            this.stateActionLatencies = stateActionLatencies;
+            this.transitionActionLatencies = transitionActionLatencies;
+        }
+
+        /**
+         * Gets the number of times the transition was made.
+         *
+         * @param transition the transition.
+         * @return the number of times or 0 if transition is unknown.
+         */
+        public long getTransitionCount(Transition transition) {
+            Long count = transitionCounts.get(transition);
+            return count != null ? count : 0;
+        }
+
+        public Map<Transition, Long> getTransitionCounts() {
+            return transitionCounts;
+        }
+
+        /**
+         * Gets the number of times the state was left.
+         *
+         * @param state the state.
+         * @return the number of times or 0 if state is unknown.
+         */
+        public long getDwellCount(State state) {
+            Long count = dwellCounts.get(state);
+            return count != null ? count : 0;
+        }
+
+        /**
+         * Gets the total time spent in the state, not including the time in the current state.
+         *
+         * @param state the state.
+         * @return the time in nanoseconds or 0 if state is unknown.
+         */
+        public long getDwellTime(State state) {
+            Long time = dwellTimes.get(state);
+            return time != null ? time : 0;
+        }
+
+        public Map<State, Long> getDwellCounts() {
+            return dwellCounts;
+        }
+
+        public Map<State, Long> getDwellTimes() {
+            return dwellTimes;
+        }
+
+        /**
+         * Gets the latency histogram of state entry and exit actions.
+         *
+         * @return the copy of the histogram buckets.
+         */
+        public long[] getStateActionLatencies() {
+            return stateActionLatencies.clone();
+        }
+
+        /**
+         * Gets the latency histogram of transition actions.
+         *
+         * @return the copy of the histogram buckets.
+         */
+        public long[] getTransitionActionLatencies() {
+            return transitionActionLatencies.clone();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.flow.Publisher;
+import com.khmelyuk.core.flow.Subscriber;
+import com.khmelyuk.core.flow.Subscription;
+
+import java.io.Serializable;
+
+/**
+ * The processor that subscribes to the publisher of input values, inputs them
+ * to the state machine instance and publishes the state changes to its subscriber.
+ * <br/>
+ * Input values are requested in batches: the next batch is requested when less than
+ * half of the previous batch is left. Each input value makes one state change at most,
+ * so no more input values are requested than state changes were requested
+ * by the subscriber, and slow subscriber slows down the publisher of input values.
+ * <br/>
+ * Processor supports one subscriber. Instance should be started before the input values
+ * are received, and it is not accessed by processor from other threads at the same time.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineProcessor implements Subscriber<Serializable>, Publisher<StateMachineProcessor.StateChange> {
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final StateMachineInstance instance;
+    private final int batchSize;
+
+    private final Object lock = new Object();
+    private Subscription upstream;
+    private Subscriber<? super StateChange> downstream;
+    private long demand;
+    private long outstanding;
+    private boolean cancelled;
+    private boolean subscribed;
+    private boolean terminated;
+    private boolean terminalSignalled;
+    private boolean emitting;
+    private Throwable error;
+
+    public StateMachineProcessor(StateMachineInstance instance) {
+        this(instance, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates the processor.
+     *
+     * @param instance the state machine instance; can't be null.
+     * @param batchSize the maximal number of input values requested at once; must be positive.
+     */
+    public StateMachineProcessor(StateMachineInstance instance, int batchSize) {
+        ArgumentAssert.isNotNull(instance, "Instance cannot be null.");
+        ArgumentAssert.isTrue(batchSize > 0, "Batch size must be positive.");
+        this.instance = instance;
+        this.batchSize = batchSize;
+    }
+
+    public StateMachineInstance getInstance() {
+        return instance;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void subscribe(Subscriber<? super StateChange> subscriber) {
+        ArgumentAssert.isNotNull(subscriber, "Subscriber cannot be null.");
+
+        boolean added;
+        synchronized (lock) {
+            added = (downstream == null);
+            if (added) {
+                downstream = subscriber;
+            }
+        }
+        if (!added) {
+            subscriber.onSubscribe(new Subscription() {
+                public void request(long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Processor supports one subscriber only."));
+            return;
+        }
+
+        subscriber.onSubscribe(new Subscription() {
+            public void request(long n) {
+                requestChanges(n);
+            }
+
+            public void cancel() {
+                cancelUpstream();
+            }
+        });
+
+        // upstream may be terminated before or while subscriber is added
+        synchronized (lock) {
+            subscribed = true;
+        }
+        signalTerminated();
+    }
+
+    public void onSubscribe(Subscription subscription) {
+        ArgumentAssert.isNotNull(subscription, "Subscription cannot be null.");
+
+        boolean cancel;
+        synchronized (lock) {
+            cancel = (upstream != null || cancelled);
+            if (upstream == null) {
+                upstream = subscription;
+            }
+        }
+        if (cancel) {
+            subscription.cancel();
+        }
+        else {
+            requestInput();
+        }
+    }
+
+    public void onNext(Serializable item) {
+        synchronized (lock) {
+            // items already in flight are dropped after cancel or error
+            if (cancelled || terminated) {
+                return;
+            }
+            outstanding--;
+            emitting = true;
+        }
+
+        try {
+            State fromState = instance.getCurrentState();
+            State toState;
+            try {
+                toState = instance.input(item);
+            }
+            catch (RuntimeException e) {
+                cancelUpstream();
+                terminate(e);
+                return;
+            }
+
+            if (toState != null && toState != fromState) {
+                Subscriber<? super StateChange> subscriber;
+                synchronized (lock) {
+                    if (cancelled || terminated) {
+                        return;
+                    }
+                    demand--;
+                    subscriber = downstream;
+                }
+                subscriber.onNext(new StateChange(fromState, toState, item));
+            }
+        }
+        finally {
+            synchronized (lock) {
+                emitting = false;
+            }
+            // termination may be deferred while item was processed
+            signalTerminated();
+        }
+        requestInput();
+    }
+
+    public void onError(Throwable error) {
+        terminate(error);
+        signalTerminated();
+    }
+
+    public void onComplete() {
+        terminate(null);
+        signalTerminated();
+    }
+
+    /**
+     * Marks the processor terminated, if it is not terminated yet.
+     *
+     * @param error the error, or null if completed normally.
+     */
+    private void terminate(Throwable error) {
+        synchronized (lock) {
+            if (!terminated) {
+                this.terminated = true;
+                this.error = error;
+            }
+        }
+    }
+
+    /**
+     * Signals the termination to the subscriber, if upstream is terminated,
+     * subscriber is subscribed and no item is emitted at the moment.
+     * Termination is signalled once only.
+     */
+    private void signalTerminated() {
+        Subscriber<? super StateChange> subscriber;
+        Throwable error;
+        synchronized (lock) {
+            if (!terminated || !subscribed || emitting || terminalSignalled) {
+                return;
+            }
+            terminalSignalled = true;
+            subscriber = downstream;
+            error = this.error;
+        }
+        if (error != null) {
+            subscriber.onError(error);
+        }
+        else {
+            subscriber.onComplete();
+        }
+    }
+
+    private void requestChanges(long n) {
+        if (n <= 0) {
+            // signalled here or by onNext() that is in progress, so signals are not concurrent
+            cancelUpstream();
+            terminate(new IllegalArgumentException("Number of requested items must be positive."));
+            signalTerminated();
+            return;
+        }
+        synchronized (lock) {
+            demand = (demand + n < 0 ? Long.MAX_VALUE : demand + n);
+        }
+        requestInput();
+    }
+
+    /**
+     * Requests the next batch of input values, if less than half of the batch is left,
+     * and subscriber requested more state changes than input values were requested.
+     */
+    private void requestInput() {
+        Subscription subscription;
+        long n;
+        synchronized (lock) {
+            subscription = upstream;
+            if (subscription == null || cancelled || terminated || outstanding > batchSize / 2) {
+                return;
+            }
+            n = Math.min(batchSize - outstanding, demand - outstanding);
+            if (n <= 0) {
+                return;
+            }
+            outstanding += n;
+        }
+        subscription.request(n);
+    }
+
+    private void cancelUpstream() {
+        Subscription subscription;
+        synchronized (lock) {
+            cancelled = true;
+            subscription = upstream;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * The change of the state made by the input value.
+     */
+    public static final class StateChange implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final State fromState;
+        private final State toState;
+        private final Serializable input;
+
+        StateChange(State fromState, State toState, Serializable input) {
+            this.fromState = fromState;
+            this.toState = toState;
+            this.input = input;
+        }
+
+        public State getFromState() {
+            return fromState;
+        }
+
+        public State getToState() {
+            return toState;
+        }
+
+        public Serializable getInput() {
+            return input;
+        }
+
+        @Override
+        public String toString() {
+            return fromState.getState() + " -> " + toState.getState() + " on " + input;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The runtime that owns many instances of the state machine with shared definition,
+ * and processes input for them concurrently.
+ * <br/>
+ * Instances are split into shards by the hash of instance id. Each shard has
+ * the mailbox and the worker thread, that is the only thread to process input
+ * for the instances of this shard. So input for the same instance is processed
+ * in the order it was sent, and no locks are used to access instances.
+ * <br/>
+ * Instance is created and started on the first input for its id.
+ * Actions and listeners of the definition are called by different worker
+ * threads, so they must be thread-safe.
+ * <br/>
+ * Mailbox of each shard is bounded, so sending to the full mailbox blocks until
+ * the worker takes messages from it. Because of this, actions and listeners
+ * should not send input to the runtime, as the worker may block on its own mailbox.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineRuntime {
+
+    private static final int DEFAULT_MAILBOX_CAPACITY = 64 * 1024;
+
+    private final StateMachineDefinition definition;
+    private final Shard[] shards;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates the runtime with number of shards equal to number of available processors.
+     *
+     * @param definition the state machine definition; can't be null.
+     */
+    public StateMachineRuntime(StateMachineDefinition definition) {
+        this(definition, Runtime.getRuntime().availableProcessors(), Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates the runtime.
+     *
+     * @param definition the state machine definition; can't be null.
+     * @param shards the number of shards; must be positive.
+     * @param threadFactory the factory of worker threads; can't be null.
+     */
+    public StateMachineRuntime(StateMachineDefinition definition, int shards, ThreadFactory threadFactory) {
+        this(definition, shards, DEFAULT_MAILBOX_CAPACITY, threadFactory);
+    }
+
+    /**
+     * Creates the runtime.
+     *
+     * @param definition the state machine definition; can't be null.
+     * @param shards the number of shards; must be positive.
+     * @param mailboxCapacity the max number of messages in the mailbox of each shard; must be positive.
+     * @param threadFactory the factory of worker threads; can't be null.
+     */
+    public StateMachineRuntime(StateMachineDefinition definition, int shards,
+                               int mailboxCapacity, ThreadFactory threadFactory) {
+        ArgumentAssert.isNotNull(definition, "Definition cannot be null.");
+        ArgumentAssert.isTrue(shards > 0, "Number of shards must be positive.");
+        ArgumentAssert.isTrue(mailboxCapacity > 0, "Mailbox capacity must be positive.");
+        ArgumentAssert.isNotNull(threadFactory, "Thread factory cannot be null.");
+
+        this.definition = definition;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(mailboxCapacity);
+            this.shards[i].thread = threadFactory.newThread(this.shards[i]);
+        }
+    }
+
+    public StateMachineDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public void start() {
+        for (Shard shard : shards) {
+            StateAssert.isTrue(shard.thread.getState() == Thread.State.NEW, "Runtime is started already.");
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Sends the input for the instance. The input is processed asynchronously.
+     * Blocks while the mailbox of the instance shard is full.
+     *
+     * @param id the instance id; can't be null.
+     * @param input the input value.
+     * @throws IllegalStateException if runtime is shut down.
+     */
+    public void input(Object id, Serializable input) {
+        ArgumentAssert.isNotNull(id, "Instance id cannot be null.");
+        StateAssert.isFalse(shutdown, "Runtime is shut down.");
+        shardOf(id).send(new Message(id, input, null));
+    }
+
+    /**
+     * Gets the current state of the instance.
+     *
+     * @param id the instance id; can't be null.
+     * @return the future with the current state of instance, or {@code null} if there is no such instance.
+     */
+    public Future<State> getCurrentState(final Object id) {
+        ArgumentAssert.isNotNull(id, "Instance id cannot be null.");
+        StateAssert.isFalse(shutdown, "Runtime is shut down.");
+
+        final Shard shard = shardOf(id);
+        FutureTask<State> task = new FutureTask<State>(new Callable<State>() {
+            public State call() throws Exception {
+                StateMachineInstance instance = shard.instances.get(id);
+                return (instance != null ? instance.getCurrentState() : null);
+            }
+        });
+        shard.send(new Message(id, null, task));
+        return task;
+    }
+
+    /**
+     * Removes the instance, so the next input for this id creates the new instance.
+     *
+     * @param id the instance id; can't be null.
+     */
+    public void remove(final Object id) {
+        ArgumentAssert.isNotNull(id, "Instance id cannot be null.");
+        StateAssert.isFalse(shutdown, "Runtime is shut down.");
+
+        final Shard shard = shardOf(id);
+        shard.send(new Message(id, null, new Runnable() {
+            public void run() {
+                shard.instances.remove(id);
+            }
+        }));
+    }
+
+    /**
+     * Shuts down the runtime. Input that was sent before is processed,
+     * new input is not accepted. Sending that races with shutdown either
+     * is processed or fails with {@code IllegalStateException}.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Waits until all worker threads finish after shutdown.
+     *
+     * @param timeout the max time to wait.
+     * @param unit the time unit of timeout.
+     * @return {@code true} if all workers finished, {@code false} if timeout elapsed.
+     * @throws InterruptedException if current thread is interrupted.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Shard shard : shards) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(shard.thread, left);
+            if (shard.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Shard shardOf(Object id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[(hash & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * The message in the shard mailbox: either input for instance or task to run.
+     */
+    private static final class Message {
+
+        static final Message SHUTDOWN = new Message(null, null, null);
+
+        final Object id;
+        final Serializable input;
+        final Runnable task;
+
+        Message(Object id, Serializable input, Runnable task) {
+            this.id = id;
+            this.input = input;
+            this.task = task;
+        }
+    }
+
+    /**
+     * The shard with mailbox, worker and instances. Instances are accessed only by worker thread.
+     * <br/>
+     * The number of messages in the mailbox is limited by permits of the semaphore.
+     * The sign bit of the sender counter is set when shard is closed, so closing waits until
+     * senders, that are adding messages now, are done, and no message is added after the
+     * shutdown message.
+     */
+    private final class Shard implements Runnable {
+
+        final Queue<Message> mailbox = new ConcurrentLinkedQueue<Message>();
+        final Map<Object, StateMachineInstance> instances = new HashMap<Object, StateMachineInstance>();
+        final Semaphore capacity;
+        final AtomicInteger senders = new AtomicInteger();
+        volatile boolean waiting = false;
+        Thread thread;
+
+        Shard(int capacity) {
+            this.capacity = new Semaphore(capacity);
+        }
+
+        void send(Message message) {
+            capacity.acquireUninterruptibly();
+            int count;
+            do {
+                count = senders.get();
+                if (count < 0) {
+                    capacity.release();
+                    throw new IllegalStateException("Runtime is shut down.");
+                }
+            }
+            while (!senders.compareAndSet(count, count + 1));
+
+            try {
+                offer(message);
+            }
+            finally {
+                senders.decrementAndGet();
+            }
+        }
+
+        void close() {
+            int count;
+            do {
+                count = senders.get();
+                if (count < 0) {
+                    return;
+                }
+            }
+            while (!senders.compareAndSet(count, count | Integer.MIN_VALUE));
+
+            // wait for senders that passed the check to add their messages
+            while (senders.get() != Integer.MIN_VALUE) {
+                Thread.yield();
+            }
+            offer(Message.SHUTDOWN);
+        }
+
+        private void offer(Message message) {
+            mailbox.offer(message);
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        public void run() {
+            for (;;) {
+                Message message = mailbox.poll();
+                if (message == null) {
+                    waiting = true;
+                    if (mailbox.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                    continue;
+                }
+                if (message == Message.SHUTDOWN) {
+                    return;
+                }
+                capacity.release();
+
+                try {
+                    process(message);
+                }
+                catch (RuntimeException e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+
+        private void process(Message message) {
+            if (message.task != null) {
+                message.task.run();
+                return;
+            }
+
+            StateMachineInstance instance = instances.get(message.id);
+            if (instance == null) {
+                instance = definition.newInstance();
+                instance.start();
+                instances.put(message.id, instance);
+            }
+            instance.input(message.input);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+import com.khmelyuk.core.utils.ConcurrentUtils;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The simulator that runs many input sequences through separate instances of the
+ * same state machine definition in parallel. Each sequence starts either from the
+ * initial state, or from the current state of the existing instance.
+ * <br/>
+ * Sequences are processed by the number of workers submitted to the executor.
+ * Each worker takes the next chunk of sequences using the shared atomic cursor,
+ * so faster workers take more chunks, and writes the final states to its own
+ * range of the result array and counts visited states in its own array,
+ * so workers share no locks. The worker counts are merged when all workers are done.
+ * <br/>
+ * Actions and listeners of the definition are called by different worker
+ * threads, so they must be thread-safe.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineSimulator {
+
+    private static final int DEFAULT_CHUNK_SIZE = 64;
+
+    private final StateMachineDefinition definition;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean countVisits = false;
+
+    /**
+     * Creates the simulator with the number of workers equal to number of available processors.
+     *
+     * @param definition the state machine definition; can't be null.
+     * @param executor the executor to run workers; can't be null.
+     */
+    public StateMachineSimulator(StateMachineDefinition definition, ExecutorService executor) {
+        this(definition, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the simulator.
+     *
+     * @param definition the state machine definition; can't be null.
+     * @param executor the executor to run workers; can't be null.
+     * @param parallelism the number of workers; must be positive.
+     */
+    public StateMachineSimulator(StateMachineDefinition definition, ExecutorService executor, int parallelism) {
+        ArgumentAssert.isNotNull(definition, "Definition cannot be null.");
+        ArgumentAssert.isNotNull(executor, "Executor cannot be null.");
+        ArgumentAssert.isTrue(parallelism > 0, "Parallelism must be positive.");
+
+        this.definition = definition;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of sequences the worker takes at once.
+     *
+     * @param chunkSize the chunk size; must be positive.
+     */
+    public void setChunkSize(int chunkSize) {
+        ArgumentAssert.isTrue(chunkSize > 0, "Chunk size must be positive.");
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean isCountVisits() {
+        return countVisits;
+    }
+
+    /**
+     * Sets whether to count how many times each state was entered.
+     *
+     * @param countVisits whether to count visits.
+     */
+    public void setCountVisits(boolean countVisits) {
+        this.countVisits = countVisits;
+    }
+
+    /**
+     * Runs each input sequence through a new started instance of the definition,
+     * and waits until all sequences are processed.
+     *
+     * @param sequences the input sequences; can't be null.
+     * @return the simulation result.
+     * @throws InterruptedException if waiting thread was interrupted.
+     */
+    public Result run(List<? extends Iterable<? extends Serializable>> sequences) throws InterruptedException {
+        ArgumentAssert.isNotNull(sequences, "Sequences cannot be null.");
+        return run(null, sequences);
+    }
+
+    /**
+     * Runs each input sequence starting from the current state of the corresponding instance,
+     * and waits until all sequences are processed. Instances are not changed by the simulation.
+     *
+     * @param instances the started instances of the definition; can't be null.
+     * @param sequences the input sequences, one for each instance; can't be null.
+     * @return the simulation result.
+     * @throws InterruptedException if waiting thread was interrupted.
+     */
+    public Result run(List<StateMachineInstance> instances,
+                      final List<? extends Iterable<? extends Serializable>> sequences) throws InterruptedException {
+
+        ArgumentAssert.isNotNull(sequences, "Sequences cannot be null.");
+
+        final int[] startStates;
+        if (instances != null) {
+            ArgumentAssert.isTrue(instances.size() == sequences.size(),
+                    "Number of instances must be equal to number of sequences.");
+            startStates = new int[instances.size()];
+            int index = 0;
+            for (StateMachineInstance each : instances) {
+                ArgumentAssert.isNotNull(each, "Instance cannot be null.");
+                ArgumentAssert.isTrue(each.getDefinition() == definition,
+                        "Instance has other definition.");
+                ArgumentAssert.isTrue(each.getCurrentStateIndex() != -1, "Instance is not started.");
+                startStates[index++] = each.getCurrentStateIndex();
+            }
+        }
+        else {
+            startStates = null;
+        }
+
+        final int size = sequences.size();
+        final int[] finalStates = new int[size];
+        final boolean countVisits = this.countVisits;
+        final int statesCount = definition.getStatesCount();
+
+        List<long[]> workerVisits = ConcurrentUtils.processChunks(executor, parallelism, size, chunkSize,
+                new ConcurrentUtils.ChunkProcessor<long[]>() {
+                    public long[] createResult() {
+                        return (countVisits ? new long[statesCount] : null);
+                    }
+
+                    public void process(int start, int end, long[] visits) {
+                        for (int index = start; index < end; index++) {
+                            int state = (startStates != null
+                                    ? startStates[index]
+                                    : definition.getInitialStateIndex());
+                            finalStates[index] = simulate(state, sequences.get(index), visits);
+                        }
+                    }
+                });
+
+        long[] visits = (countVisits ? new long[statesCount] : null);
+        if (visits != null) {
+            for (long[] each : workerVisits) {
+                for (int i = 0; i < statesCount; i++) {
+                    visits[i] += each[i];
+                }
+            }
+        }
+        return new Result(definition, finalStates, visits);
+    }
+
+    private int simulate(int state, Iterable<? extends Serializable> sequence, long[] visits) {
+        if (visits != null) {
+            visits[state]++;
+        }
+        for (Serializable each : sequence) {
+            int transition = definition.findTransition(state, each);
+            if (transition != -1) {
+                int previous = state;
+                state = definition.fire(previous, transition);
+                if (visits != null) {
+                    visits[state]++;
+                }
+                definition.notifyTransition(previous, transition, state);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * The result of the simulation: the final state of each sequence
+     * and the number of visits of each state.
+     */
+    public static final class Result {
+
+        private final StateMachineDefinition definition;
+        private final int[] finalStates;
+        private final long[] visits;
+        private final int[] finalStateCounts;
+        private final int successCount;
+
+        private Result(StateMachineDefinition definition, int[] finalStates, long[] visits) {
+            this.definition = definition;
+            this.finalStates = finalStates;
+            this.visits = visits;
+
+            int successCount = 0;
+            this.finalStateCounts = new int[definition.getStatesCount()];
+            for (int each : finalStates) {
+                finalStateCounts[each]++;
+                if (definition.isAcceptable(each)) {
+                    successCount++;
+                }
+            }
+            this.successCount = successCount;
+        }
+
+        /**
+         * Gets the number of simulated sequences.
+         *
+         * @return the number of sequences.
+         */
+        public int size() {
+            return finalStates.length;
+        }
+
+        /**
+         * Gets the state the instance finished in for the sequence.
+         *
+         * @param index the index of the sequence.
+         * @return the final state.
+         */
+        public State getFinalState(int index) {
+            return definition.getState(finalStates[index]);
+        }
+
+        public int getFinalStateIndex(int index) {
+            return finalStates[index];
+        }
+
+        public boolean isSuccess(int index) {
+            return definition.isAcceptable(finalStates[index]);
+        }
+
+        /**
+         * Gets the number of sequences that finished in the acceptable state.
+         *
+         * @return the number of successful sequences.
+         */
+        public int getSuccessCount() {
+            return successCount;
+        }
+
+        /**
+         * Gets the number of sequences that finished in the state.
+         *
+         * @param state the state.
+         * @return the number of sequences or 0 if state is not a part of the definition.
+         */
+        public int getFinalStateCount(State state) {
+            int index = definition.indexOf(state);
+            return (index != -1 ? finalStateCounts[index] : 0);
+        }
+
+        public boolean hasVisitCounts() {
+            return visits != null;
+        }
+
+        /**
+         * Gets the number of times the state was entered in all sequences,
+         * including the start of each sequence in its start state: the initial state,
+         * or the current state of the instance if sequences are run from instances.
+         *
+         * @param state the state.
+         * @return the number of visits or 0 if state is not a part of the definition.
+         * @throws IllegalStateException if visits were not counted.
+         */
+        public long getVisitCount(State state) {
+            StateAssert.isNotNull(visits, "Visits were not counted.");
+            int index = definition.indexOf(state);
+            return (index != -1 ? visits[index] : 0);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The compact snapshot of the state machine instance. Snapshot contains only the
+ * fingerprint of the definition, the current state ordinal and the in-progress flag,
+ * while states, transitions, actions and conditions are not stored.
+ * <br/>
+ * The binary format is the 8-byte fingerprint followed by the variable length
+ * value {@code (ordinal + 1) << 1 | inProgress}, so it takes 9 bytes for machines
+ * with less than 64 states.
+ * <br/>
+ * Snapshot is restored by binding to the already loaded definition with the same fingerprint.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class StateMachineSnapshot implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long fingerprint;
+    private int state;
+    private boolean inProgress;
+
+    /**
+     * Used by externalization only.
+     */
+    public StateMachineSnapshot() {
+    }
+
+    private StateMachineSnapshot(long fingerprint, int state, boolean inProgress) {
+        this.fingerprint = fingerprint;
+        this.state = state;
+        this.inProgress = inProgress;
+    }
+
+    /**
+     * Takes the snapshot of the instance.
+     *
+     * @param instance the instance; can't be null.
+     * @return the snapshot of the instance.
+     */
+    public static StateMachineSnapshot of(StateMachineInstance instance) {
+        ArgumentAssert.isNotNull(instance, "Instance can't be null.");
+        return new StateMachineSnapshot(
+                instance.getDefinition().getFingerprint(),
+                instance.getCurrentStateIndex(),
+                instance.isInProgress());
+    }
+
+    /**
+     * Takes the snapshot of the instance in the store slot.
+     *
+     * @param store the store; can't be null.
+     * @param slot the instance slot.
+     * @return the snapshot of the instance.
+     */
+    public static StateMachineSnapshot of(StateMachineStore store, int slot) {
+        ArgumentAssert.isNotNull(store, "Store can't be null.");
+        return new StateMachineSnapshot(
+                store.getDefinition().getFingerprint(),
+                store.getCurrentStateIndex(slot),
+                store.isInProgress(slot));
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gets the ordinal of the current state.
+     *
+     * @return the state ordinal, or -1 if instance was not started.
+     */
+    public int getStateIndex() {
+        return state;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    /**
+     * Creates a new instance of definition with the state from this snapshot.
+     *
+     * @param definition the definition to bind snapshot to; can't be null.
+     * @return the restored instance.
+     * @throws IllegalStateException if snapshot was taken for other definition.
+     */
+    public StateMachineInstance restore(StateMachineDefinition definition) {
+        checkDefinition(definition);
+        StateMachineInstance instance = definition.newInstance();
+        instance.restore(state, inProgress);
+        return instance;
+    }
+
+    /**
+     * Restores the state of the instance in the store slot.
+     *
+     * @param store the store with definition to bind snapshot to; can't be null.
+     * @param slot the instance slot.
+     * @throws IllegalStateException if snapshot was taken for other definition.
+     */
+    public void restore(StateMachineStore store, int slot) {
+        ArgumentAssert.isNotNull(store, "Store can't be null.");
+        checkDefinition(store.getDefinition());
+        store.ensureCapacity(slot + 1);
+        store.restore(slot, state, inProgress);
+    }
+
+    private void checkDefinition(StateMachineDefinition definition) {
+        ArgumentAssert.isNotNull(definition, "Definition can't be null.");
+        StateAssert.isTrue(definition.getFingerprint() == fingerprint,
+                "Snapshot was taken for other definition.");
+    }
+
+    /**
+     * Writes snapshot to the output.
+     *
+     * @param out the output to write to.
+     * @throws IOException error to write snapshot.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(fingerprint);
+        int value = ((state + 1) << 1) | (inProgress ? 1 : 0);
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads snapshot from the input.
+     *
+     * @param in the input to read from.
+     * @return the read snapshot.
+     * @throws IOException error to read snapshot.
+     */
+    public static StateMachineSnapshot read(DataInput in) throws IOException {
+        StateMachineSnapshot snapshot = new StateMachineSnapshot();
+        snapshot.readFrom(in);
+        return snapshot;
+    }
+
+    private void readFrom(DataInput in) throws IOException {
+        long fingerprint = in.readLong();
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28) {
+                throw new IOException("Malformed snapshot.");
+            }
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+
+        this.fingerprint = fingerprint;
+        this.state = (value >>> 1) - 1;
+        this.inProgress = (value & 1) != 0;
+    }
+
+    /**
+     * Gets the binary form of this snapshot.
+     *
+     * @return the snapshot bytes.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        try {
+            write(new DataOutputStream(bytes));
+        }
+        catch (IOException e) {
+            // not thrown by byte array stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads snapshot from the binary form.
+     *
+     * @param bytes the snapshot bytes; can't be null.
+     * @return the read snapshot.
+     * @throws IllegalArgumentException if bytes are not a valid snapshot.
+     */
+    public static StateMachineSnapshot fromByteArray(byte[] bytes) {
+        ArgumentAssert.isNotNull(bytes, "Bytes can't be null.");
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Malformed snapshot.", e);
+        }
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        write(out);
+    }
+
+    public void readExternal(ObjectInput in) throws IOException {
+        readFrom(in);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof StateMachineSnapshot)) return false;
+
+        StateMachineSnapshot other = (StateMachineSnapshot) obj;
+        return fingerprint == other.fingerprint
+                && state == other.state
+                && inProgress == other.inProgress;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (fingerprint ^ (fingerprint >>> 32));
+        result = 31 * result + state;
+        result = 31 * result + (inProgress ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "StateMachineSnapshot{fingerprint=" + fingerprint
+                + ", state=" + state + ", inProgress=" + inProgress + "}";
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The store of many state machine instances with shared {@link StateMachineDefinition}.
+ * Each instance is identified by the slot, and the state of all instances is kept
+ * in one {@code int} array, so there is no object per instance.
+ * <br/>
+ * The slot value is the ordinal of the current state if instance is in progress,
+ * the inverted ordinal ({@code ~ordinal}) if instance is finished,
+ * or {@link #NOT_STARTED} if instance is not started.
+ * <br/>
+ * Store is not thread-safe.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class StateMachineStore {
+
+    /**
+     * The slot value for instance that is not started yet.
+     */
+    private static final int NOT_STARTED = Integer.MIN_VALUE;
+
+    private final StateMachineDefinition definition;
+    private int[] states;
+
+    StateMachineStore(StateMachineDefinition definition, int capacity) {
+        ArgumentAssert.isTrue(capacity >= 0, "Capacity can't be negative.");
+        this.definition = definition;
+        this.states = new int[capacity];
+        Arrays.fill(this.states, NOT_STARTED);
+    }
+
+    public StateMachineDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Gets the number of slots in the store.
+     * @return the number of slots.
+     */
+    public int getCapacity() {
+        return states.length;
+    }
+
+    /**
+     * Grows the store, so it has at least specified number of slots.
+     * New slots contain not started instances.
+     *
+     * @param capacity the minimal number of slots.
+     */
+    public void ensureCapacity(int capacity) {
+        int oldCapacity = states.length;
+        if (capacity > oldCapacity) {
+            int newCapacity = Math.max(capacity, oldCapacity + (oldCapacity >> 1));
+            int[] newStates = new int[newCapacity];
+            System.arraycopy(states, 0, newStates, 0, oldCapacity);
+            Arrays.fill(newStates, oldCapacity, newCapacity, NOT_STARTED);
+            states = newStates;
+        }
+    }
+
+    public void start(int slot) {
+        StateAssert.isTrue(states[slot] == NOT_STARTED, "Automate is started already.");
+        states[slot] = definition.getInitialStateIndex();
+    }
+
+    public void finish(int slot) {
+        int state = states[slot];
+        StateAssert.isTrue(state != NOT_STARTED, "Automate is not started yet.");
+        StateAssert.isTrue(state >= 0, "Automate is not in progress.");
+        states[slot] = ~state;
+    }
+
+    /**
+     * Makes the instance in slot not started, so the slot can be reused.
+     * @param slot the instance slot.
+     */
+    public void reset(int slot) {
+        states[slot] = NOT_STARTED;
+    }
+
+    /**
+     * Restores the state of the instance in slot.
+     *
+     * @param slot the instance slot.
+     * @param state the ordinal of the current state, or -1 for not started instance.
+     * @param inProgress whether instance is in progress.
+     */
+    void restore(int slot, int state, boolean inProgress) {
+        StateAssert.isTrue(state >= -1 && state < definition.getStatesCount(), "Wrong state ordinal.");
+        if (state == -1) {
+            states[slot] = NOT_STARTED;
+        }
+        else {
+            states[slot] = (inProgress ? state : ~state);
+        }
+    }
+
+    public State input(int slot, Serializable input) {
+        int value = states[slot];
+        if (value == NOT_STARTED) {
+            return null;
+        }
+
+        boolean inProgress = (value >= 0);
+        int state = (inProgress ? value : ~value);
+        int transition = definition.findTransition(state, input);
+        if (transition == -1) {
+            return definition.getState(state);
+        }
+
+        int nextState = definition.fire(state, transition);
+        states[slot] = (inProgress ? nextState : ~nextState);
+        definition.notifyTransition(state, transition, nextState);
+        return definition.getState(nextState);
+    }
+
+    public State getCurrentState(int slot) {
+        int state = getCurrentStateIndex(slot);
+        return (state != -1 ? definition.getState(state) : null);
+    }
+
+    /**
+     * Gets the ordinal of the current state of the instance in slot.
+     *
+     * @param slot the instance slot.
+     * @return the current state ordinal or -1 if instance is not started.
+     */
+    public int getCurrentStateIndex(int slot) {
+        int value = states[slot];
+        if (value == NOT_STARTED) {
+            return -1;
+        }
+        return (value >= 0 ? value : ~value);
+    }
+
+    public State getFinishState(int slot) {
+        int value = states[slot];
+        if (value != NOT_STARTED && value < 0) {
+            return definition.getState(~value);
+        }
+        return null;
+    }
+
+    public boolean isSuccess(int slot) {
+        int state = getCurrentStateIndex(slot);
+        return state != -1 && definition.isAcceptable(state);
+    }
+
+    public boolean isFailed(int slot) {
+        return !isSuccess(slot);
+    }
+
+    public boolean isInProgress(int slot) {
+        return states[slot] >= 0;
+    }
+
+    public boolean isStarted(int slot) {
+        return states[slot] != NOT_STARTED;
+    }
+}
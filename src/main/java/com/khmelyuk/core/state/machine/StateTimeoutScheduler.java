@@ -0,0 +1,170 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.fp.Procedure;
+import com.khmelyuk.core.state.machine.conditions.TimeoutCondition;
+
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The scheduler of timed transitions for state machine instances.
+ * Timed transition is the transition with {@link TimeoutCondition}; it is made
+ * when instance stays in the state for the timeout. If state has many timed
+ * transitions, the one with the shortest timeout is used.
+ * <br/>
+ * Instances should be started and receive input through the scheduler,
+ * so it can schedule the timeout when instance goes into a new state,
+ * and cancel it when instance leaves the state. Timeouts are kept in the
+ * {@link TimerWheel}, so both operations are O(1). If instance is not in the scheduled
+ * state when timeout elapses, because the state was changed outside the scheduler,
+ * the timeout is not fired, and the timeout of the current state is scheduled instead.
+ * <br/>
+ * Method {@link #advance()} should be called periodically to fire the elapsed timeouts.
+ * Scheduler is not thread-safe, so one thread is expected to drive all its instances.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateTimeoutScheduler {
+
+    private final TimerWheel<ScheduledTimeout> wheel;
+    private final Map<StateMachineInstance, TimerWheel.Timer<ScheduledTimeout>> timers =
+            new IdentityHashMap<StateMachineInstance, TimerWheel.Timer<ScheduledTimeout>>();
+
+    private final Procedure<ScheduledTimeout> timeoutProcedure = new Procedure<ScheduledTimeout>() {
+        public void run(ScheduledTimeout scheduled) {
+            StateMachineInstance instance = scheduled.instance;
+            timers.remove(instance);
+            if (instance.isInProgress()) {
+                // state could be changed outside the scheduler
+                int state = instance.getCurrentStateIndex();
+                TimeoutCondition timeout = instance.getDefinition().getTimeout(state);
+                if (state == scheduled.state && timeout != null) {
+                    instance.input(timeout);
+                }
+                schedule(instance);
+            }
+        }
+    };
+
+    /**
+     * Creates the scheduler.
+     *
+     * @param tickDuration the precision of timeouts in milliseconds; must be positive.
+     */
+    public StateTimeoutScheduler(long tickDuration) {
+        this.wheel = new TimerWheel<ScheduledTimeout>(tickDuration, currentTimeMillis());
+    }
+
+    /**
+     * Starts the instance and schedules the timeout of the initial state.
+     *
+     * @param instance the instance to start; can't be null.
+     * @return the current state of instance.
+     */
+    public State start(StateMachineInstance instance) {
+        ArgumentAssert.isNotNull(instance, "Instance cannot be null.");
+        instance.start();
+        schedule(instance);
+        return instance.getCurrentState();
+    }
+
+    /**
+     * Inputs the value into the instance. If instance goes into another state,
+     * the timeout of the previous state is cancelled and the timeout of new state is scheduled.
+     *
+     * @param instance the instance; can't be null.
+     * @param input the input value.
+     * @return the current state of instance.
+     */
+    public State input(StateMachineInstance instance, Serializable input) {
+        ArgumentAssert.isNotNull(instance, "Instance cannot be null.");
+
+        int state = instance.getCurrentStateIndex();
+        State result = instance.input(input);
+        if (state != instance.getCurrentStateIndex()) {
+            cancel(instance);
+            schedule(instance);
+        }
+        return result;
+    }
+
+    /**
+     * Cancels the timeout of the instance, for example when instance is finished or dropped.
+     *
+     * @param instance the instance; can't be null.
+     * @return {@code true} if timeout was cancelled, {@code false} if there was no scheduled timeout.
+     */
+    public boolean cancel(StateMachineInstance instance) {
+        ArgumentAssert.isNotNull(instance, "Instance cannot be null.");
+
+        TimerWheel.Timer<ScheduledTimeout> timer = timers.remove(instance);
+        return timer != null && timer.cancel();
+    }
+
+    /**
+     * Fires the timed transitions of instances which timeouts elapsed.
+     * @return the number of elapsed timeouts.
+     */
+    public int advance() {
+        return wheel.advance(currentTimeMillis(), timeoutProcedure);
+    }
+
+    /**
+     * Gets the number of scheduled timeouts.
+     * @return the number of scheduled timeouts.
+     */
+    public int size() {
+        return wheel.size();
+    }
+
+    /**
+     * Gets the current time in milliseconds.
+     * @return the current time.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void schedule(StateMachineInstance instance) {
+        int state = instance.getCurrentStateIndex();
+        TimeoutCondition timeout = instance.getDefinition().getTimeout(state);
+        if (timeout != null) {
+            long deadline = currentTimeMillis() + timeout.getTimeout();
+            timers.put(instance, wheel.schedule(new ScheduledTimeout(instance, state), deadline));
+        }
+    }
+
+    /**
+     * The timeout of the instance in the state.
+     */
+    private static final class ScheduledTimeout {
+
+        final StateMachineInstance instance;
+        final int state;
+
+        ScheduledTimeout(StateMachineInstance instance, int state) {
+            this.instance = instance;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.code.Warnings;
+import com.khmelyuk.core.fp.Procedure;
+
+/**
+ * The hierarchical timing wheel. Time is split into ticks of the same duration,
+ * and timers are put into the slot of the wheel by their deadline tick.
+ * There are few wheels, each next wheel has slots that are as long as
+ * the whole previous wheel. When the previous wheel makes a full turn,
+ * timers from the next wheel slot are moved to the previous wheel.
+ * <br/>
+ * Both scheduling and cancelling the timer is O(1). Timers never expire
+ * earlier than their deadline, but may expire up to one tick later.
+ * <br/>
+ * Timing wheel is not thread-safe and is expected to be used by one thread.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class TimerWheel<T> {
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int WHEELS = 4;
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS * WHEELS)) - 1;
+
+    private final long tickDuration;
+    private final long startTime;
+    private final Timer<T>[][] wheels;
+
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * Creates the timing wheel.
+     *
+     * @param tickDuration the duration of one tick; must be positive.
+     * @param startTime the current time, in the same units as tick duration.
+     */
+    @SuppressWarnings(Warnings.Unchecked)
+    public TimerWheel(long tickDuration, long startTime) {
+        ArgumentAssert.isTrue(tickDuration > 0, "Tick duration must be positive.");
+
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        this.wheels = new Timer[WHEELS][WHEEL_SIZE];
+        for (int i = 0; i < WHEELS; i++) {
+            for (int j = 0; j < WHEEL_SIZE; j++) {
+                wheels[i][j] = new Timer<T>(null, null, 0);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of scheduled timers.
+     * @return the number of scheduled timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules the timer for the value. If deadline is passed already,
+     * timer expires on the next tick.
+     *
+     * @param value the timer value.
+     * @param deadline the time when timer expires, in the same units as tick duration.
+     * @return the scheduled timer.
+     */
+    public Timer<T> schedule(T value, long deadline) {
+        long ticks = deadline - startTime;
+        long expires = ticks / tickDuration + (ticks % tickDuration > 0 ? 1 : 0);
+
+        Timer<T> timer = new Timer<T>(this, value, Math.max(expires, currentTick + 1));
+        add(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Advances the wheel to the specified time and expires all timers with passed deadline.
+     *
+     * @param now the current time, in the same units as tick duration.
+     * @param procedure the procedure that is run for the value of each expired timer; can't be null.
+     * @return the number of expired timers.
+     */
+    public int advance(long now, Procedure<T> procedure) {
+        ArgumentAssert.isNotNull(procedure, "Procedure can't be null.");
+
+        long targetTick = (now - startTime) / tickDuration;
+        int expired = 0;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                currentTick = targetTick;
+                break;
+            }
+
+            currentTick++;
+            for (int i = 1; i < WHEELS; i++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * i)) - 1)) != 0) {
+                    break;
+                }
+                cascade(i);
+            }
+
+            Timer<T> head = wheels[0][(int) (currentTick & WHEEL_MASK)];
+            while (head.next != head) {
+                Timer<T> timer = head.next;
+                timer.unlink();
+                size--;
+                expired++;
+                procedure.run(timer.value);
+            }
+        }
+        return expired;
+    }
+
+    private void cascade(int wheel) {
+        Timer<T> head = wheels[wheel][(int) ((currentTick >> (WHEEL_BITS * wheel)) & WHEEL_MASK)];
+        while (head.next != head) {
+            Timer<T> timer = head.next;
+            timer.unlink();
+            add(timer);
+        }
+    }
+
+    private void add(Timer<T> timer) {
+        long expires = timer.expires;
+        long ticks = expires - currentTick;
+        if (ticks > MAX_TICKS) {
+            // too far, so put into the last slot of the wheel; moved back on cascade
+            expires = currentTick + MAX_TICKS;
+            ticks = MAX_TICKS;
+        }
+
+        int wheel = 0;
+        while (wheel < WHEELS - 1 && ticks >= (1L << (WHEEL_BITS * (wheel + 1)))) {
+            wheel++;
+        }
+        Timer<T> head = wheels[wheel][(int) ((expires >> (WHEEL_BITS * wheel)) & WHEEL_MASK)];
+        timer.linkBefore(head);
+    }
+
+    /**
+     * The timer scheduled in the timing wheel.
+     */
+    public static final class Timer<T> {
+
+        private final TimerWheel<T> wheel;
+        private final T value;
+        private final long expires;
+
+        private Timer<T> prev = this;
+        private Timer<T> next = this;
+
+        Timer(TimerWheel<T> wheel, T value, long expires) {
+            this.wheel = wheel;
+            this.value = value;
+            this.expires = expires;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Checks whether timer is scheduled, i.e. is not expired or cancelled yet.
+         * @return {@code true} if timer is scheduled, otherwise {@code false}.
+         */
+        public boolean isScheduled() {
+            return next != this;
+        }
+
+        /**
+         * Cancels the timer.
+         * @return {@code true} if timer is cancelled, {@code false} if it was expired or cancelled before.
+         */
+        public boolean cancel() {
+            if (next == this) {
+                return false;
+            }
+            unlink();
+            wheel.size--;
+            return true;
+        }
+
+        private void linkBefore(Timer<T> head) {
+            next = head;
+            prev = head.prev;
+            prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+}
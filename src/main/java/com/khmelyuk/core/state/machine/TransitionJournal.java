@@ -0,0 +1,361 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+import com.khmelyuk.core.asserts.StateAssert;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The append-only journal of state machine transitions.
+ * Each transition is written as a fixed-size binary record with the instance id,
+ * the ordinals of the states and transition, and the timestamp. Records are
+ * appended to the memory-mapped segment files in the journal directory; when
+ * segment is full, the next segment is created. Each segment starts with the header
+ * of record size with the fingerprint of the definition, so the journal is read
+ * only with the same definition it was written for.
+ * <br/>
+ * The journal is read back with {@link #replay(java.io.File, StateMachineDefinition, RecordHandler)}, which reads segments
+ * sequentially, or recovered into instances or store with {@code recover} methods.
+ * <br/>
+ * Journal always starts a new segment when opened, so segments written before are never changed.
+ * Mapped segments are flushed to disk with {@link #flush()} and when segment is full or journal is closed.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class TransitionJournal {
+
+    /**
+     * The size of one record in bytes.
+     */
+    public static final int RECORD_SIZE = 32;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Marks the written record; the empty part of segment is filled with zeros.
+     */
+    private static final int RECORD_MARKER = 0x534d4a31;
+
+    /**
+     * Marks the written segment header.
+     */
+    private static final int HEADER_MARKER = 0x534d4a48;
+
+    /**
+     * The handler of records read from journal.
+     */
+    public interface RecordHandler {
+
+        /**
+         * Handles the transition record.
+         *
+         * @param instanceId the instance id.
+         * @param fromState the ordinal of the state before transition.
+         * @param toState the ordinal of the state after transition.
+         * @param transition the transition ordinal.
+         * @param timestamp the time of transition in milliseconds.
+         */
+        void onRecord(long instanceId, int fromState, int toState, int transition, long timestamp);
+    }
+
+    private final File directory;
+    private final StateMachineDefinition definition;
+    private final int segmentSize;
+
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private boolean closed = false;
+
+    /**
+     * Opens the journal in the directory.
+     *
+     * @param directory the journal directory, created if not exists; can't be null.
+     * @param definition the definition of the journaled instances; can't be null.
+     * @param segmentRecords the number of records in one segment; must be positive.
+     * @throws IOException error to create directory or segment file.
+     */
+    public TransitionJournal(File directory, StateMachineDefinition definition, int segmentRecords) throws IOException {
+        ArgumentAssert.isNotNull(directory, "Directory can't be null.");
+        ArgumentAssert.isNotNull(definition, "Definition can't be null.");
+        ArgumentAssert.isTrue(segmentRecords > 0 && segmentRecords < Integer.MAX_VALUE / RECORD_SIZE,
+                "Number of records in segment must be positive.");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create journal directory " + directory);
+        }
+
+        this.directory = directory;
+        this.definition = definition;
+        this.segmentSize = (segmentRecords + 1) * RECORD_SIZE;
+
+        File[] segments = listSegments(directory);
+        this.segmentIndex = (segments.length != 0 ? segmentIndex(segments[segments.length - 1]) : -1);
+        nextSegment();
+    }
+
+    /**
+     * Inputs the value into the instance and appends the record if transition was made.
+     *
+     * @param instanceId the instance id.
+     * @param instance the instance; can't be null.
+     * @param input the input value.
+     * @return the current state of instance.
+     * @throws IOException error to create the next segment.
+     */
+    public State input(long instanceId, StateMachineInstance instance, Serializable input) throws IOException {
+        ArgumentAssert.isNotNull(instance, "Instance can't be null.");
+        ArgumentAssert.isTrue(instance.getDefinition().getFingerprint() == definition.getFingerprint(),
+                "Instance has other definition.");
+
+        int fromState = instance.getCurrentStateIndex();
+        int transition = instance.inputTransition(input);
+        if (transition != -1) {
+            append(instanceId, fromState, instance.getCurrentStateIndex(), transition, System.currentTimeMillis());
+        }
+        return instance.getCurrentState();
+    }
+
+    /**
+     * Appends the transition record.
+     *
+     * @param instanceId the instance id.
+     * @param fromState the ordinal of the state before transition.
+     * @param toState the ordinal of the state after transition.
+     * @param transition the transition ordinal.
+     * @param timestamp the time of transition in milliseconds.
+     * @throws IOException error to create the next segment.
+     */
+    public synchronized void append(long instanceId, int fromState, int toState,
+                                    int transition, long timestamp) throws IOException {
+        StateAssert.isFalse(closed, "Journal is closed.");
+        if (segment.remaining() < RECORD_SIZE) {
+            segment.force();
+            nextSegment();
+        }
+
+        int position = segment.position();
+        segment.putLong(position + 4, instanceId);
+        segment.putInt(position + 12, fromState);
+        segment.putInt(position + 16, toState);
+        segment.putInt(position + 20, transition);
+        segment.putLong(position + 24, timestamp);
+        // the marker is written the last, so incomplete record is not read
+        segment.putInt(position, RECORD_MARKER);
+        segment.position(position + RECORD_SIZE);
+    }
+
+    /**
+     * Writes the changes of the current segment to disk.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the journal.
+     */
+    public synchronized void close() {
+        if (!closed) {
+            segment.force();
+            segment = null;
+            closed = true;
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        segmentIndex++;
+        File file = new File(directory, segmentName(segmentIndex));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentSize);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        finally {
+            // mapping stays valid after channel is closed
+            raf.close();
+        }
+
+        segment.putLong(4, definition.getFingerprint());
+        segment.putInt(0, HEADER_MARKER);
+        segment.position(RECORD_SIZE);
+    }
+
+    /**
+     * Reads all records from the journal in the order they were written.
+     * Segments without the written header are empty and skipped.
+     *
+     * @param directory the journal directory; can't be null.
+     * @param definition the definition the journal was written for; can't be null.
+     * @param handler the records handler; can't be null.
+     * @return the number of read records.
+     * @throws IOException error to read segment files.
+     * @throws IllegalStateException if journal was written for other definition.
+     */
+    public static long replay(File directory, StateMachineDefinition definition, RecordHandler handler) throws IOException {
+        ArgumentAssert.isNotNull(directory, "Directory can't be null.");
+        ArgumentAssert.isNotNull(definition, "Definition can't be null.");
+        ArgumentAssert.isNotNull(handler, "Handler can't be null.");
+
+        long count = 0;
+        for (File file : listSegments(directory)) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                if (buffer.remaining() < RECORD_SIZE || buffer.getInt(0) != HEADER_MARKER) {
+                    continue;
+                }
+                StateAssert.isTrue(buffer.getLong(4) == definition.getFingerprint(),
+                        "Journal was written for other definition.");
+                buffer.position(RECORD_SIZE);
+
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    int position = buffer.position();
+                    if (buffer.getInt(position) != RECORD_MARKER) {
+                        break;
+                    }
+                    handler.onRecord(
+                            buffer.getLong(position + 4),
+                            buffer.getInt(position + 12),
+                            buffer.getInt(position + 16),
+                            buffer.getInt(position + 20),
+                            buffer.getLong(position + 24));
+                    buffer.position(position + RECORD_SIZE);
+                    count++;
+                }
+            }
+            finally {
+                raf.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Recovers the current states of instances from the journal.
+     * Recovered instances are in progress and in the state of their last record.
+     *
+     * @param directory the journal directory; can't be null.
+     * @param definition the state machine definition; can't be null.
+     * @return the recovered instances by id.
+     * @throws IOException error to read segment files.
+     * @throws IllegalStateException if journal was written for other definition.
+     */
+    public static Map<Long, StateMachineInstance> recover(File directory, final StateMachineDefinition definition) throws IOException {
+        ArgumentAssert.isNotNull(definition, "Definition can't be null.");
+
+        final Map<Long, StateMachineInstance> instances = new HashMap<Long, StateMachineInstance>();
+        replay(directory, definition, new RecordHandler() {
+            public void onRecord(long instanceId, int fromState, int toState, int transition, long timestamp) {
+                StateMachineInstance instance = instances.get(instanceId);
+                if (instance == null) {
+                    instance = definition.newInstance();
+                    instances.put(instanceId, instance);
+                }
+                instance.restore(toState, true);
+            }
+        });
+        return instances;
+    }
+
+    /**
+     * Recovers the current states of instances in the store from the journal,
+     * where instance id is the slot in the store. Recovered instances are in progress
+     * and in the state of their last record. The store grows if needed.
+     *
+     * @param directory the journal directory; can't be null.
+     * @param store the store; can't be null.
+     * @throws IOException error to read segment files.
+     * @throws IllegalStateException if journal was written for other definition.
+     */
+    public static void recover(File directory, final StateMachineStore store) throws IOException {
+        ArgumentAssert.isNotNull(store, "Store can't be null.");
+
+        replay(directory, store.getDefinition(), new RecordHandler() {
+            public void onRecord(long instanceId, int fromState, int toState, int transition, long timestamp) {
+                StateAssert.isTrue(instanceId >= 0 && instanceId < Integer.MAX_VALUE, "Wrong slot " + instanceId);
+                store.ensureCapacity((int) instanceId + 1);
+                store.restore((int) instanceId, toState, true);
+            }
+        });
+    }
+
+    private static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && isSegmentName(file.getName());
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File left, File right) {
+                int leftIndex = segmentIndex(left);
+                int rightIndex = segmentIndex(right);
+                return (leftIndex < rightIndex ? -1 : (leftIndex == rightIndex ? 0 : 1));
+            }
+        });
+        return files;
+    }
+
+    private static boolean isSegmentName(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return false;
+        }
+        String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+        if (number.length() == 0 || number.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            if (!Character.isDigit(number.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String segmentName(int index) {
+        String number = String.valueOf(index);
+        StringBuilder name = new StringBuilder(SEGMENT_PREFIX);
+        for (int i = number.length(); i < 9; i++) {
+            name.append('0');
+        }
+        return name.append(number).append(SEGMENT_SUFFIX).toString();
+    }
+
+    private static int segmentIndex(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
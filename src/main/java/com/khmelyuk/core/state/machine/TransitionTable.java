@@ -0,0 +1,459 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.Pair;
+import com.khmelyuk.core.code.Warnings;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled, immutable transition table of the state machine.
+ * Each state gets an index equal to its position in the list of states,
+ * and outgoing transitions of each state are stored in the array
+ * with {@code ElseCondition} transitions moved to the end.
+ * <br/>
+ * The table is used to find the transition for input without allocation
+ * and without looking at transitions of other states.
+ * <br/>
+ * If state has many {@code EqualsCondition} transitions, they are grouped into
+ * the hash index by condition value, so such transition is found with one lookup.
+ * If state has many {@code RangeCondition} transitions, the range bounds are sorted,
+ * and the first transition for each interval between bounds is precomputed,
+ * so such transition is found with the binary search.
+ * Other conditions are checked in order only if they go before the found transition,
+ * and {@code ElseCondition} transitions are checked last, so the first matching
+ * transition is selected as it would be with the linear scan.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+final class TransitionTable {
+
+    private static final Transition[] NO_TRANSITIONS = new Transition[0];
+    private static final int[] NO_TARGETS = new int[0];
+
+    /**
+     * The minimal number of {@code EqualsCondition} or {@code RangeCondition} transitions
+     * of the state to group them into the index.
+     */
+    static final int MIN_INDEXED_CONDITIONS = 4;
+
+    private final State[] states;
+    private final Map<State, Integer> indexes;
+    private final Transition[][] transitions;
+    private final int[][] targets;
+    private final int[][] ordinals;
+    private final int transitionsCount;
+    private final Map<Object, Integer>[] equalsIndexes;
+    private final double[][] rangeBounds;
+    private final int[][] rangeTransitions;
+    private final int[][] conditionalTransitions;
+    private final int[] elseTransitions;
+
+    @SuppressWarnings(Warnings.Unchecked)
+    TransitionTable(List<State> states, Map<Transition, Pair<State, State>> transitions) {
+        int size = states.size();
+
+        this.states = states.toArray(new State[size]);
+        this.indexes = new HashMap<State, Integer>(size * 2);
+        for (int i = 0; i < size; i++) {
+            indexes.put(this.states[i], i);
+        }
+
+        List<List<Transition>> regular = new ArrayList<List<Transition>>(size);
+        List<List<Transition>> others = new ArrayList<List<Transition>>(size);
+        for (int i = 0; i < size; i++) {
+            regular.add(null);
+            others.add(null);
+        }
+
+        Map<Transition, Integer> transitionOrdinals = new HashMap<Transition, Integer>(transitions.size() * 2);
+        for (Map.Entry<Transition, Pair<State, State>> eachTransition : transitions.entrySet()) {
+            int from = indexOf(eachTransition.getValue().getFirst());
+            Transition transition = eachTransition.getKey();
+            transitionOrdinals.put(transition, transitionOrdinals.size());
+
+            List<List<Transition>> lists = (transition.getCondition() instanceof ElseCondition ? others : regular);
+            List<Transition> list = lists.get(from);
+            if (list == null) {
+                list = new ArrayList<Transition>();
+                lists.set(from, list);
+            }
+            list.add(transition);
+        }
+
+        this.transitions = new Transition[size][];
+        this.targets = new int[size][];
+        this.ordinals = new int[size][];
+        this.transitionsCount = transitions.size();
+        this.equalsIndexes = new Map[size];
+        this.rangeBounds = new double[size][];
+        this.rangeTransitions = new int[size][];
+        this.conditionalTransitions = new int[size][];
+        this.elseTransitions = new int[size];
+        for (int i = 0; i < size; i++) {
+            List<Transition> stateTransitions = join(regular.get(i), others.get(i));
+            if (stateTransitions.isEmpty()) {
+                this.transitions[i] = NO_TRANSITIONS;
+                this.targets[i] = NO_TARGETS;
+                this.ordinals[i] = NO_TARGETS;
+            }
+            else {
+                this.transitions[i] = stateTransitions.toArray(new Transition[stateTransitions.size()]);
+                this.targets[i] = new int[this.transitions[i].length];
+                this.ordinals[i] = new int[this.transitions[i].length];
+                for (int j = 0; j < this.transitions[i].length; j++) {
+                    this.targets[i][j] = indexOf(transitions.get(this.transitions[i][j]).getSecond());
+                    this.ordinals[i][j] = transitionOrdinals.get(this.transitions[i][j]);
+                }
+            }
+            buildIndex(i, (regular.get(i) != null ? regular.get(i).size() : 0));
+        }
+    }
+
+    private void buildIndex(int state, int elseTransition) {
+        Transition[] stateTransitions = transitions[state];
+
+        int equalsCount = 0;
+        int rangeCount = 0;
+        for (int i = 0; i < elseTransition; i++) {
+            Class conditionClass = stateTransitions[i].getCondition().getClass();
+            // subclasses can change the match logic, so only exact types are indexed
+            if (conditionClass == EqualsCondition.class) {
+                equalsCount++;
+            }
+            else if (conditionClass == RangeCondition.class) {
+                rangeCount++;
+            }
+        }
+
+        boolean indexEquals = (equalsCount >= MIN_INDEXED_CONDITIONS);
+        boolean indexRanges = (rangeCount >= MIN_INDEXED_CONDITIONS);
+
+        Map<Object, Integer> index = (indexEquals ? new HashMap<Object, Integer>(equalsCount * 2) : null);
+        List<Integer> ranges = (indexRanges ? new ArrayList<Integer>(rangeCount) : null);
+        int[] conditional = new int[elseTransition
+                - (indexEquals ? equalsCount : 0)
+                - (indexRanges ? rangeCount : 0)];
+        int conditionalCount = 0;
+        for (int i = 0; i < elseTransition; i++) {
+            TransitionCondition condition = stateTransitions[i].getCondition();
+            if (indexEquals && condition.getClass() == EqualsCondition.class) {
+                Object value = ((EqualsCondition) condition).getConditionValue();
+                if (!index.containsKey(value)) {
+                    index.put(value, i);
+                }
+            }
+            else if (indexRanges && condition.getClass() == RangeCondition.class) {
+                ranges.add(i);
+            }
+            else {
+                conditional[conditionalCount++] = i;
+            }
+        }
+
+        equalsIndexes[state] = index;
+        if (indexRanges) {
+            buildRangeIndex(state, ranges);
+        }
+        conditionalTransitions[state] = conditional;
+        elseTransitions[state] = elseTransition;
+    }
+
+    /**
+     * Builds the range index of the state. The sorted distinct bounds {@code b[0..n-1]}
+     * split numbers into {@code 2n + 1} intervals: the interval {@code 2i + 1} is the bound
+     * {@code b[i]} itself, and the interval {@code 2i} is the numbers between {@code b[i - 1]}
+     * and {@code b[i]}. All numbers of the interval match the same ranges,
+     * so the first matching transition is precomputed for each interval.
+     */
+    private void buildRangeIndex(int state, List<Integer> ranges) {
+        Transition[] stateTransitions = transitions[state];
+
+        double[] bounds = new double[ranges.size() * 2];
+        int boundsCount = 0;
+        for (Integer each : ranges) {
+            RangeCondition condition = (RangeCondition) stateTransitions[each].getCondition();
+            bounds[boundsCount++] = condition.getLower();
+            bounds[boundsCount++] = condition.getUpper();
+        }
+        Arrays.sort(bounds);
+
+        int distinctCount = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            if (i == 0 || bounds[i] != bounds[distinctCount - 1]) {
+                bounds[distinctCount++] = bounds[i];
+            }
+        }
+        double[] distinct = new double[distinctCount];
+        System.arraycopy(bounds, 0, distinct, 0, distinctCount);
+
+        int[] intervals = new int[distinctCount * 2 + 1];
+        Arrays.fill(intervals, -1);
+        for (Integer each : ranges) {
+            RangeCondition condition = (RangeCondition) stateTransitions[each].getCondition();
+            int lower = Arrays.binarySearch(distinct, condition.getLower());
+            int upper = Arrays.binarySearch(distinct, condition.getUpper());
+            int from = (condition.isLowerInclusive() ? lower * 2 + 1 : lower * 2 + 2);
+            int to = (condition.isUpperInclusive() ? upper * 2 + 1 : upper * 2);
+            for (int i = from; i <= to; i++) {
+                // ranges are in transition order, so the first one wins
+                if (intervals[i] == -1) {
+                    intervals[i] = each;
+                }
+            }
+        }
+
+        rangeBounds[state] = distinct;
+        rangeTransitions[state] = intervals;
+    }
+
+    private static int findRangeTransition(double[] bounds, int[] intervals, Serializable input) {
+        if (!(input instanceof Number)) {
+            return -1;
+        }
+        double value = ((Number) input).doubleValue();
+        if (Double.isNaN(value)) {
+            return -1;
+        }
+        // +0.0 is used instead of -0.0, like in bounds
+        int position = Arrays.binarySearch(bounds, value + 0.0);
+        return intervals[position >= 0 ? position * 2 + 1 : (-position - 1) * 2];
+    }
+
+    private static List<Transition> join(List<Transition> first, List<Transition> second) {
+        List<Transition> result = new ArrayList<Transition>();
+        if (first != null) {
+            result.addAll(first);
+        }
+        if (second != null) {
+            result.addAll(second);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of states in the table.
+     * @return the number of states.
+     */
+    int size() {
+        return states.length;
+    }
+
+    /**
+     * Gets the index of the state.
+     *
+     * @param state the state to get index for.
+     * @return the state index or -1 if state is not a part of the table.
+     */
+    int indexOf(State state) {
+        Integer index = indexes.get(state);
+        return (index != null ? index : -1);
+    }
+
+    /**
+     * Gets the state by its index.
+     *
+     * @param index the state index.
+     * @return the state.
+     */
+    State getState(int index) {
+        return states[index];
+    }
+
+    /**
+     * Gets the number of all transitions in the table.
+     * @return the number of transitions.
+     */
+    int getTransitionsCount() {
+        return transitionsCount;
+    }
+
+    /**
+     * Gets the number of outgoing transitions of the state.
+     *
+     * @param state the state index.
+     * @return the number of transitions.
+     */
+    int getTransitionsCount(int state) {
+        return transitions[state].length;
+    }
+
+    /**
+     * Checks whether the state has any outgoing transitions.
+     *
+     * @param state the state index.
+     * @return {@code true} if state has outgoing transitions, otherwise {@code false}.
+     */
+    boolean hasTransitions(int state) {
+        return transitions[state].length != 0;
+    }
+
+    /**
+     * Finds the first transition from the state that matches the input.
+     *
+     * @param state the index of the state to find transition from.
+     * @param input the input value.
+     * @return the index of the found transition within the state transitions
+     *         or -1 if none matches the input.
+     */
+    int findTransition(int state, Serializable input) {
+        Transition[] stateTransitions = transitions[state];
+
+        int found = -1;
+        Map<Object, Integer> index = equalsIndexes[state];
+        if (index != null) {
+            Integer transition = index.get(input);
+            if (transition != null) {
+                found = transition;
+            }
+        }
+
+        double[] bounds = rangeBounds[state];
+        if (bounds != null) {
+            int transition = findRangeTransition(bounds, rangeTransitions[state], input);
+            if (transition != -1 && (found == -1 || transition < found)) {
+                found = transition;
+            }
+        }
+
+        int[] conditional = conditionalTransitions[state];
+        for (int i = 0; i < conditional.length; i++) {
+            int transition = conditional[i];
+            if (found != -1 && transition > found) {
+                break;
+            }
+            if (stateTransitions[transition].getCondition().match(input)) {
+                return transition;
+            }
+        }
+        if (found != -1) {
+            return found;
+        }
+
+        for (int i = elseTransitions[state]; i < stateTransitions.length; i++) {
+            if (stateTransitions[i].getCondition().match(input)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the transition of the state.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the transition.
+     */
+    Transition getTransition(int state, int transition) {
+        return transitions[state][transition];
+    }
+
+    /**
+     * Gets the ordinal of the transition, that is its position in the list of all transitions.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the transition ordinal.
+     */
+    int getTransitionOrdinal(int state, int transition) {
+        return ordinals[state][transition];
+    }
+
+    /**
+     * Runs the exit action of the state, the action of the transition and
+     * the entry action of the state the transition leads to.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the index of the state the transition leads to.
+     */
+    int fire(int state, int transition) {
+        State fromState = states[state];
+        Transition stateTransition = transitions[state][transition];
+        int target = targets[state][transition];
+        State toState = states[target];
+
+        if (fromState.getExitAction() != null) {
+            fromState.getExitAction().run(fromState, stateTransition);
+        }
+        if (stateTransition.getAction() != null) {
+            stateTransition.getAction().run(stateTransition, fromState, toState);
+        }
+        if (toState.getEntryAction() != null) {
+            toState.getEntryAction().run(toState, stateTransition);
+        }
+        return target;
+    }
+
+    /**
+     * Runs the actions like {@link #fire(int, int)} does, and records the transition
+     * and the latency of each action to the metrics.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @param metrics the metrics to record to.
+     * @return the index of the state the transition leads to.
+     */
+    int fire(int state, int transition, StateMachineMetrics metrics) {
+        State fromState = states[state];
+        Transition stateTransition = transitions[state][transition];
+        int target = targets[state][transition];
+        State toState = states[target];
+
+        metrics.recordTransition(ordinals[state][transition]);
+        if (fromState.getExitAction() != null) {
+            long start = System.nanoTime();
+            fromState.getExitAction().run(fromState, stateTransition);
+            metrics.recordStateAction(System.nanoTime() - start);
+        }
+        if (stateTransition.getAction() != null) {
+            long start = System.nanoTime();
+            stateTransition.getAction().run(stateTransition, fromState, toState);
+            metrics.recordTransitionAction(System.nanoTime() - start);
+        }
+        if (toState.getEntryAction() != null) {
+            long start = System.nanoTime();
+            toState.getEntryAction().run(toState, stateTransition);
+            metrics.recordStateAction(System.nanoTime() - start);
+        }
+        return target;
+    }
+
+    /**
+     * Gets the index of the state the transition leads to.
+     *
+     * @param state the state index.
+     * @param transition the index of the transition within the state transitions.
+     * @return the index of the target state.
+     */
+    int getTarget(int state, int transition) {
+        return targets[state][transition];
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fixed-size ring buffer of the last transitions of the state machine.
+ * Each record is the source state, the target state, the hash code of the input
+ * and the {@link System#nanoTime()} of the transition, kept in the primitive arrays,
+ * so recording doesn't allocate objects.
+ * <br/>
+ * Trace is written by the state machine thread only. It can be read from other thread,
+ * but then records written during the read may be inconsistent.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class TransitionTrace {
+
+    private final TransitionTable table;
+    private final int mask;
+    private final int[] from;
+    private final int[] to;
+    private final int[] inputHashes;
+    private final long[] times;
+    private volatile long count;
+
+    /**
+     * Creates the trace.
+     *
+     * @param table the transition table of the traced state machine.
+     * @param capacity the number of records to keep, rounded up to the power of two.
+     */
+    TransitionTrace(TransitionTable table, int capacity) {
+        ArgumentAssert.isTrue(capacity > 0, "Capacity should be positive.");
+        ArgumentAssert.isTrue(capacity <= (1 << 30), "Capacity is too big.");
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        this.table = table;
+        this.mask = size - 1;
+        this.from = new int[size];
+        this.to = new int[size];
+        this.inputHashes = new int[size];
+        this.times = new long[size];
+    }
+
+    TransitionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the maximal number of records in the trace.
+     *
+     * @return the trace capacity.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the number of transitions recorded since trace was created,
+     * including records that were overwritten.
+     *
+     * @return the number of recorded transitions.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    void record(int fromState, int toState, int inputHash) {
+        long index = count;
+        int slot = (int) index & mask;
+        from[slot] = fromState;
+        to[slot] = toState;
+        inputHashes[slot] = inputHash;
+        times[slot] = System.nanoTime();
+        count = index + 1;
+    }
+
+    /**
+     * Gets the records in the trace, starting from the oldest one.
+     *
+     * @return the list of records.
+     */
+    public List<Record> getRecords() {
+        long end = count;
+        long start = Math.max(0, end - getCapacity());
+
+        List<Record> result = new ArrayList<Record>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            int slot = (int) i & mask;
+            result.add(new Record(
+                    table.getState(from[slot]), table.getState(to[slot]),
+                    inputHashes[slot], times[slot]));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Writes the records in the trace, one per line, starting from the oldest one.
+     *
+     * @return the text dump of the trace.
+     */
+    public String dump() {
+        StringBuilder result = new StringBuilder();
+        for (Record each : getRecords()) {
+            result.append(each).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * The record of the single transition.
+     */
+    public static final class Record {
+
+        private final State from;
+        private final State to;
+        private final int inputHash;
+        private final long time;
+
+        private Record(State from, State to, int inputHash, long time) {
+            this.from = from;
+            this.to = to;
+            this.inputHash = inputHash;
+            this.time = time;
+        }
+
+        public State getFrom() {
+            return from;
+        }
+
+        public State getTo() {
+            return to;
+        }
+
+        public int getInputHash() {
+            return inputHash;
+        }
+
+        /**
+         * Gets the time of the transition.
+         *
+         * @return the value of {@link System#nanoTime()} when transition was made.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + from.getState() + " -> " + to.getState()
+                    + " (input hash " + inputHash + ")";
+        }
+    }
+}
@@ -16,6 +16,10 @@ public class EqualsCondition implements TransitionCondition {
         this.conditionValue = conditionValue;
     }
 
+    public Serializable getConditionValue() {
+        return conditionValue;
+    }
+
     public boolean match(Serializable value) {
         return ObjectUtils.equals(conditionValue, value);
     }
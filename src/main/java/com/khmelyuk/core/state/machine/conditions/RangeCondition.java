@@ -0,0 +1,93 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.state.machine.conditions;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+
+import java.io.Serializable;
+
+/**
+ * The condition of the transition that matches numeric input in the range.
+ * Input is compared as {@code double} value, so input that is not a {@link Number}
+ * or is {@code NaN} doesn't match any range.
+ * <br/>
+ * If state has many range conditions, the compiled state machine finds
+ * the matching one with the binary search over range bounds.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class RangeCondition implements TransitionCondition {
+
+    private final double lower;
+    private final boolean lowerInclusive;
+    private final double upper;
+    private final boolean upperInclusive;
+
+    /**
+     * Creates the condition for the range {@code [lower, upper)}.
+     *
+     * @param lower the lower bound, inclusive.
+     * @param upper the upper bound, exclusive.
+     */
+    public RangeCondition(double lower, double upper) {
+        this(lower, true, upper, false);
+    }
+
+    /**
+     * Creates the condition for the range.
+     *
+     * @param lower the lower bound; use {@code Double.NEGATIVE_INFINITY} for range without lower bound.
+     * @param lowerInclusive whether lower bound is in range.
+     * @param upper the upper bound; use {@code Double.POSITIVE_INFINITY} for range without upper bound.
+     * @param upperInclusive whether upper bound is in range.
+     */
+    public RangeCondition(double lower, boolean lowerInclusive, double upper, boolean upperInclusive) {
+        ArgumentAssert.isFalse(Double.isNaN(lower) || Double.isNaN(upper), "Range bound can't be NaN.");
+        ArgumentAssert.isTrue(lower <= upper, "Lower bound can't be greater than upper bound.");
+        // +0.0 is used instead of -0.0, as they are equal when compared as numbers
+        this.lower = lower + 0.0;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper + 0.0;
+        this.upperInclusive = upperInclusive;
+    }
+
+    public double getLower() {
+        return lower;
+    }
+
+    public boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    public double getUpper() {
+        return upper;
+    }
+
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+
+    public boolean match(Serializable value) {
+        if (!(value instanceof Number)) {
+            return false;
+        }
+        double number = ((Number) value).doubleValue();
+        return (lowerInclusive ? number >= lower : number > lower)
+                && (upperInclusive ? number <= upper : number < upper);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.khmelyuk.core.state.machine.conditions;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The condition of the transition that is made when state machine stays in the state
+ * for the specified time. Such transitions are fired by
+ * {@link com.khmelyuk.core.state.machine.StateTimeoutScheduler}, which inputs
+ * the condition itself when timeout is elapsed, so the condition matches only itself.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class TimeoutCondition implements TransitionCondition {
+
+    private final long timeout;
+
+    /**
+     * Creates the timeout condition.
+     * @param timeout the timeout in milliseconds.
+     */
+    public TimeoutCondition(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates the timeout condition.
+     * @param timeout the timeout.
+     * @param unit the timeout unit.
+     */
+    public TimeoutCondition(long timeout, TimeUnit unit) {
+        this.timeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Gets the timeout in milliseconds.
+     * @return the timeout in milliseconds.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public boolean match(Serializable value) {
+        return value == this;
+    }
+}
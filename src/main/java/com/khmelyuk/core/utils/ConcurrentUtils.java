@@ -0,0 +1,127 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.utils;
+
+import com.khmelyuk.core.asserts.ArgumentAssert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contains utils to process data in parallel.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public final class ConcurrentUtils {
+
+    private ConcurrentUtils() {
+    }
+
+    /**
+     * Processes the range of indexes by chunks in parallel. Each worker takes the next chunk
+     * using the shared atomic cursor, so faster workers take more chunks, and writes
+     * to its own result, so workers share no locks.
+     * <br/>
+     * Runtime exceptions and errors of workers are rethrown by this method.
+     *
+     * @param executor the executor to run workers; can't be null.
+     * @param parallelism the maximal number of workers; must be positive.
+     * @param size the number of indexes, starting from 0.
+     * @param chunkSize the number of indexes the worker takes at once; must be positive.
+     * @param processor the chunk processor; can't be null.
+     * @param <R> the type of worker result.
+     * @return the list of results of all workers.
+     * @throws InterruptedException if waiting thread was interrupted.
+     */
+    public static <R> List<R> processChunks(ExecutorService executor, int parallelism,
+                                            final int size, final int chunkSize,
+                                            final ChunkProcessor<R> processor) throws InterruptedException {
+
+        ArgumentAssert.isNotNull(executor, "Executor can't be null.");
+        ArgumentAssert.isTrue(parallelism > 0, "Parallelism must be positive.");
+        ArgumentAssert.isTrue(chunkSize > 0, "Chunk size must be positive.");
+        ArgumentAssert.isNotNull(processor, "Processor can't be null.");
+
+        final AtomicInteger cursor = new AtomicInteger();
+        int workers = Math.max(1, Math.min(parallelism, (size + chunkSize - 1) / chunkSize));
+        List<Future<R>> futures = new ArrayList<Future<R>>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new Callable<R>() {
+                    public R call() {
+                        R result = processor.createResult();
+                        int start;
+                        while ((start = cursor.getAndAdd(chunkSize)) < size) {
+                            processor.process(start, Math.min(size, start + chunkSize), result);
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            List<R> results = new ArrayList<R>(workers);
+            for (Future<R> each : futures) {
+                results.add(each.get());
+            }
+            return results;
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            // stop other workers if any failed or thread was interrupted
+            cursor.set(size);
+        }
+    }
+
+    /**
+     * Processes the chunks of indexes by the single worker.
+     *
+     * @param <R> the type of worker result.
+     */
+    public interface ChunkProcessor<R> {
+
+        /**
+         * Creates the result of the new worker.
+         *
+         * @return the worker result, can be null.
+         */
+        R createResult();
+
+        /**
+         * Processes the chunk of indexes.
+         *
+         * @param start the first index, inclusive.
+         * @param end the last index, exclusive.
+         * @param result the result of the worker.
+         */
+        void process(int start, int end, R result);
+
+    }
+}
@@ -0,0 +1,261 @@
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.Identifiable;
+import com.khmelyuk.core.fp.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for the <code>DirtyDiff</code> class.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyDiffTestCase extends BaseTestCase {
+
+    private static class Item implements Identifiable<Integer> {
+
+        private final Integer id;
+        private final String name;
+
+        Item(Integer id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item item = (Item) o;
+            return id.equals(item.id) && name.equals(item.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() * 31 + name.hashCode();
+        }
+    }
+
+    private static List<Item> items(Object... idsAndNames) {
+        List<Item> result = new ArrayList<Item>();
+        for (int i = 0; i < idsAndNames.length; i += 2) {
+            result.add(new Item((Integer) idsAndNames[i], (String) idsAndNames[i + 1]));
+        }
+        return result;
+    }
+
+    private static void assertDirty(DirtyWrapper<Item> dirty, Integer id, String name, DirtyState state) {
+        assertEquals(id, dirty.getValue().getId());
+        assertEquals(name, dirty.getValue().name);
+        assertEquals(state, dirty.getState());
+    }
+
+    public void testDiff() throws Exception {
+        DirtyDiff<Item, Integer> diff = new DirtyDiff<Item, Integer>(DirtyDiff.<Integer>idFunction());
+
+        List<DirtyWrapper<Item>> result = diff.diff(
+                items(1, "a", 2, "b", 3, "c", 4, "d"),
+                items(5, "e", 3, "c", 1, "aa"));
+
+        assertEquals(5, result.size());
+        assertDirty(result.get(0), 5, "e", DirtyState.ADDED);
+        assertDirty(result.get(1), 3, "c", DirtyState.UNMODIFIED);
+        assertDirty(result.get(2), 1, "aa", DirtyState.MODIFIED);
+        assertDirty(result.get(3), 2, "b", DirtyState.REMOVED);
+        assertDirty(result.get(4), 4, "d", DirtyState.REMOVED);
+    }
+
+    public void testDiffEmpty() throws Exception {
+        DirtyDiff<String, Integer> diff = new DirtyDiff<String, Integer>(new Function<String, Integer>() {
+            public Integer run(String value) {
+                return value.length();
+            }
+        });
+
+        assertTrue(diff.diff(new ArrayList<String>(), new ArrayList<String>()).isEmpty());
+
+        DirtyPartition<String> partition = diff.partition(Arrays.asList("a", "bb"), new ArrayList<String>());
+        assertEquals(Arrays.asList("a", "bb"), partition.getRemoved());
+
+        partition = diff.partition(new ArrayList<String>(), Arrays.asList("a", "bb"));
+        assertEquals(Arrays.asList("a", "bb"), partition.getAdded());
+    }
+
+    public void testDuplicateOldKeys() throws Exception {
+        DirtyDiff<Item, Integer> diff = new DirtyDiff<Item, Integer>(DirtyDiff.<Integer>idFunction());
+        try {
+            diff.diff(items(1, "a", 1, "b"), items(1, "a"));
+            fail("Old values have duplicate keys");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+
+    public void testDuplicateNewKeys() throws Exception {
+        DirtyDiff<Item, Integer> diff = new DirtyDiff<Item, Integer>(DirtyDiff.<Integer>idFunction());
+        try {
+            diff.diff(items(1, "a"), items(1, "a", 1, "b"));
+            fail("New values have duplicate keys");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        try {
+            diff.diff(items(1, "a"), items(2, "a", 2, "b"));
+            fail("New values have duplicate keys");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DirtyDiff<Item, Integer> parallel = new DirtyDiff<Item, Integer>(
+                    DirtyDiff.<Integer>idFunction(), executor, 2);
+            parallel.setParallelThreshold(0);
+            parallel.setChunkSize(1);
+            parallel.diff(items(1, "a"), items(1, "a", 2, "b", 1, "c"));
+            fail("New values have duplicate keys");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParallelDuplicateOldKeys() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DirtyDiff<Item, Integer> parallel = new DirtyDiff<Item, Integer>(
+                    DirtyDiff.<Integer>idFunction(), executor, 2);
+            parallel.setParallelThreshold(0);
+            parallel.setChunkSize(1);
+            parallel.diff(items(1, "a", 2, "b", 1, "c"), items(1, "a"));
+            fail("Old values have duplicate keys");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testNullKeys() throws Exception {
+        Function<String, String> key = new Function<String, String>() {
+            public String run(String value) {
+                return (value.startsWith("null") ? null : value);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DirtyDiff<String, String> parallel = new DirtyDiff<String, String>(key, executor, 2);
+            parallel.setParallelThreshold(0);
+            parallel.setChunkSize(1);
+            List<DirtyDiff<String, String>> diffs = Arrays.asList(new DirtyDiff<String, String>(key), parallel);
+            for (DirtyDiff<String, String> each : diffs) {
+                DirtyPartition<String> partition = each.partition(Arrays.asList("null", "a"), Arrays.asList("null2", "b"));
+                assertEquals(Arrays.asList("null2"), partition.getModified());
+                assertEquals(Arrays.asList("b"), partition.getAdded());
+                assertEquals(Arrays.asList("a"), partition.getRemoved());
+                try {
+                    each.diff(Arrays.asList("a"), Arrays.asList("null", "b", "null2"));
+                    fail("New values have duplicate null keys");
+                }
+                catch (IllegalArgumentException e) {
+                    // it is OK
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParallelDiff() throws Exception {
+        List<Item> oldItems = new ArrayList<Item>();
+        List<Item> newItems = new ArrayList<Item>();
+        for (int i = 0; i < 10000; i++) {
+            oldItems.add(new Item(i, "item"));
+            if (i % 4 == 1) {
+                newItems.add(new Item(i, "changed"));
+            }
+            else if (i % 4 != 2) {
+                newItems.add(new Item(i, "item"));
+            }
+        }
+        for (int i = 10000; i < 12000; i++) {
+            newItems.add(new Item(i, "item"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DirtyDiff<Item, Integer> diff = new DirtyDiff<Item, Integer>(
+                    DirtyDiff.<Integer>idFunction(), executor, 4);
+            diff.setChunkSize(100);
+            diff.setParallelThreshold(0);
+
+            DirtyPartition<Item> partition = diff.partition(oldItems, newItems);
+            assertEquals(2000, partition.getAdded().size());
+            assertEquals(2500, partition.getModified().size());
+            assertEquals(2500, partition.getRemoved().size());
+            assertEquals(5000, partition.getUnmodified().size());
+
+            DirtyDiff<Item, Integer> sequential = new DirtyDiff<Item, Integer>(DirtyDiff.<Integer>idFunction());
+            List<DirtyWrapper<Item>> expected = sequential.diff(oldItems, newItems);
+            List<DirtyWrapper<Item>> actual = diff.diff(oldItems, newItems);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+                assertEquals(expected.get(i).getState(), actual.get(i).getState());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParallelDiffFailure() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DirtyDiff<String, String> diff = new DirtyDiff<String, String>(new Function<String, String>() {
+                public String run(String value) {
+                    if (value.equals("fail")) {
+                        throw new IllegalStateException("fail");
+                    }
+                    return value;
+                }
+            }, executor, 2);
+            diff.setParallelThreshold(0);
+
+            try {
+                diff.diff(Arrays.asList("a"), Arrays.asList("a", "fail"));
+                fail("Key function failed");
+            }
+            catch (IllegalStateException e) {
+                // it is OK
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.BaseTestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the field-level dirty tracking.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyFieldsTestCase extends BaseTestCase {
+
+    public static interface User {
+
+        String getName();
+
+        void setName(String name);
+
+        String getEmail();
+
+        void setEmail(String email);
+
+        int getAge();
+
+        void setAge(int age);
+
+        String getURL();
+
+        void setURL(String url);
+
+    }
+
+    public static class UserImpl implements User {
+
+        private static final int MAX_AGE = 150;
+
+        private String name;
+        private String email;
+        private int age;
+        private String url;
+        private transient boolean loaded;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public void setEmail(String email) {
+            this.email = email;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            if (age > MAX_AGE) {
+                throw new IllegalArgumentException("Age is too big.");
+            }
+            this.age = age;
+        }
+
+        public String getURL() {
+            return url;
+        }
+
+        public void setURL(String url) {
+            this.url = url;
+        }
+    }
+
+    public static class Admin extends UserImpl {
+
+        private String role;
+
+    }
+
+    public void testClassMetadata() {
+        DirtyFieldMetadata metadata = DirtyFieldMetadata.forClass(Admin.class);
+
+        assertSame(metadata, DirtyFieldMetadata.forClass(Admin.class));
+        assertEquals(5, metadata.getFieldsCount());
+        assertEquals("age", metadata.getName(0));
+        assertEquals("email", metadata.getName(1));
+        assertEquals("name", metadata.getName(2));
+        assertEquals("url", metadata.getName(3));
+        assertEquals("role", metadata.getName(4));
+        assertEquals(4, metadata.getIndex("role"));
+        assertEquals(-1, metadata.getIndex("loaded"));
+        assertEquals(-1, metadata.getIndex("MAX_AGE"));
+    }
+
+    public void testInterfaceMetadata() {
+        DirtyFieldMetadata metadata = DirtyFieldMetadata.forClass(User.class);
+
+        assertEquals(4, metadata.getFieldsCount());
+        assertEquals("URL", metadata.getName(0));
+        assertEquals("age", metadata.getName(1));
+        assertEquals("email", metadata.getName(2));
+        assertEquals("name", metadata.getName(3));
+    }
+
+    public void testDuplicateNames() {
+        try {
+            new DirtyFieldMetadata("name", "email", "name");
+            fail("Duplicate field names");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+
+    public void testMarkDirty() {
+        DirtyFields fields = new DirtyFields(new DirtyFieldMetadata("id", "name", "email", "age"));
+        assertFalse(fields.isDirty());
+        assertEquals(-1, fields.nextDirtyIndex(0));
+
+        fields.markDirty("email");
+        fields.markDirty(0);
+        fields.markDirty(3, 10, 10);
+        fields.markDirty(1, null, null);
+
+        assertTrue(fields.isDirty());
+        assertTrue(fields.isDirty("email"));
+        assertFalse(fields.isDirty("age"));
+        assertEquals(2, fields.getDirtyCount());
+        assertEquals(5L, fields.getMask());
+        assertEquals(Arrays.asList("id", "email"), fields.getDirtyNames());
+
+        fields.markDirty(3, null, 10);
+        assertTrue(fields.isDirty(3));
+
+        fields.clear();
+        assertFalse(fields.isDirty());
+        assertEquals(0L, fields.getMask());
+
+        try {
+            fields.markDirty("unknown");
+            fail("Unknown field");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        try {
+            fields.markDirty(4);
+            fail("Index is out of bounds");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // it is OK
+        }
+    }
+
+    public void testManyFields() {
+        String[] names = new String[150];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "field" + i;
+        }
+        DirtyFields fields = new DirtyFields(new DirtyFieldMetadata(names));
+        fields.markDirty(5);
+        fields.markDirty(64);
+        fields.markDirty(149);
+
+        assertEquals(3, fields.getDirtyCount());
+        assertEquals(5, fields.nextDirtyIndex(0));
+        assertEquals(64, fields.nextDirtyIndex(6));
+        assertEquals(149, fields.nextDirtyIndex(65));
+        assertEquals(-1, fields.nextDirtyIndex(150));
+        assertEquals(Arrays.asList("field5", "field64", "field149"), fields.getDirtyNames());
+
+        try {
+            fields.getMask();
+            fail("Mask of more than 64 fields");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+        fields.clear();
+        assertFalse(fields.isDirty());
+        assertEquals(-1, fields.nextDirtyIndex(0));
+    }
+
+    public void test64Fields() {
+        String[] names = new String[64];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "field" + i;
+        }
+        DirtyFields fields = new DirtyFields(new DirtyFieldMetadata(names));
+        fields.markDirty(0);
+        fields.markDirty(63);
+
+        assertEquals(2, fields.getDirtyCount());
+        assertEquals(0x8000000000000001L, fields.getMask());
+        assertEquals(63, fields.nextDirtyIndex(1));
+        assertEquals(-1, fields.nextDirtyIndex(64));
+        assertEquals(-1, fields.nextDirtyIndex(-1));
+    }
+
+    public void testProxy() {
+        UserImpl target = new UserImpl();
+        User user = DirtyFieldsProxy.create(User.class, target);
+        DirtyFields fields = ((DirtyTracked) user).getDirtyFields();
+
+        assertFalse(fields.isDirty());
+
+        user.setName("John");
+        user.setAge(30);
+        user.setURL("http://example.com");
+
+        assertEquals("John", target.getName());
+        assertEquals("John", user.getName());
+        assertEquals(30, user.getAge());
+        assertEquals(Arrays.asList("URL", "age", "name"), fields.getDirtyNames());
+
+        fields.clear();
+        try {
+            user.setAge(200);
+            fail("Age is too big");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        assertFalse(fields.isDirty());
+    }
+
+    public void testProxyForClass() {
+        try {
+            DirtyFieldsProxy.create(UserImpl.class, new UserImpl());
+            fail("Type must be an interface");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+}
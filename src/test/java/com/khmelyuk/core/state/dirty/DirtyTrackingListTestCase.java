@@ -0,0 +1,168 @@
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.BaseTestCase;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests for the <code>DirtyTrackingList</code> class.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyTrackingListTestCase extends BaseTestCase {
+
+    private DirtyTrackingList<String> createList() {
+        return new DirtyTrackingList<String>(Arrays.asList("a", "b", "c", "d"));
+    }
+
+    public void testInitialValuesAreUnmodified() {
+        DirtyTrackingList<String> list = createList();
+
+        assertEquals(4, list.size());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), list);
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(DirtyState.UNMODIFIED, list.getState(i));
+        }
+        assertFalse(list.isDirty());
+        assertEquals(-1, list.nextDirtyIndex(0));
+        assertTrue(list.getDirtyValues().isEmpty());
+    }
+
+    public void testAdd() {
+        DirtyTrackingList<String> list = createList();
+        list.add("e");
+        list.add(1, "f");
+
+        assertEquals(Arrays.asList("a", "f", "b", "c", "d", "e"), list);
+        assertEquals(DirtyState.ADDED, list.getState(1));
+        assertEquals(DirtyState.UNMODIFIED, list.getState(2));
+        assertEquals(DirtyState.ADDED, list.getState(5));
+        assertEquals(2, list.getDirtyCount());
+        assertEquals(1, list.nextDirtyIndex(0));
+        assertEquals(5, list.nextDirtyIndex(2));
+        assertEquals(-1, list.nextDirtyIndex(6));
+    }
+
+    public void testAddGrowsList() {
+        DirtyTrackingList<Integer> list = new DirtyTrackingList<Integer>(0);
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+        }
+
+        assertEquals(100, list.size());
+        assertEquals(Integer.valueOf(99), list.get(99));
+        assertEquals(100, list.getDirtyCount());
+    }
+
+    public void testSet() {
+        DirtyTrackingList<String> list = createList();
+        list.add("e");
+
+        assertEquals("b", list.set(1, "bb"));
+        assertEquals("e", list.set(4, "ee"));
+
+        assertEquals(DirtyState.MODIFIED, list.getState(1));
+        assertEquals(DirtyState.ADDED, list.getState(4));
+        assertEquals("bb", list.get(1));
+        assertEquals(2, list.getDirtyCount());
+    }
+
+    public void testMarkModified() {
+        DirtyTrackingList<String> list = createList();
+        list.markModified(2);
+
+        assertEquals(DirtyState.MODIFIED, list.getState(2));
+        assertEquals(2, list.nextDirtyIndex(0));
+    }
+
+    public void testRemove() {
+        DirtyTrackingList<String> list = createList();
+        list.add("e");
+        list.set(3, "dd");
+
+        assertEquals("b", list.remove(1));
+        assertEquals("e", list.remove(3));
+
+        assertEquals(Arrays.asList("a", "c", "dd"), list);
+        assertEquals(Arrays.asList("b"), list.getRemoved());
+        assertEquals(DirtyState.UNMODIFIED, list.getState(1));
+        assertEquals(DirtyState.MODIFIED, list.getState(2));
+        assertEquals(2, list.nextDirtyIndex(0));
+        assertEquals(1, list.getDirtyCount());
+
+        // removed through iterator
+        Iterator<String> iterator = list.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(Arrays.asList("b", "a"), list.getRemoved());
+        assertEquals(Arrays.asList("c", "dd"), list);
+    }
+
+    public void testClear() {
+        DirtyTrackingList<String> list = createList();
+        list.add("e");
+        list.clear();
+
+        assertEquals(0, list.size());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), list.getRemoved());
+        assertEquals(0, list.getDirtyCount());
+    }
+
+    public void testGetDirtyValues() {
+        DirtyTrackingList<String> list = createList();
+        list.add("e");
+        list.set(0, "aa");
+        list.remove(2);
+
+        List<DirtyWrapper<String>> dirty = list.getDirtyValues();
+        assertEquals(3, dirty.size());
+        assertEquals("aa", dirty.get(0).getValue());
+        assertEquals(DirtyState.MODIFIED, dirty.get(0).getState());
+        assertEquals("e", dirty.get(1).getValue());
+        assertEquals(DirtyState.ADDED, dirty.get(1).getState());
+        assertEquals("c", dirty.get(2).getValue());
+        assertEquals(DirtyState.REMOVED, dirty.get(2).getState());
+    }
+
+    public void testClearDirty() {
+        DirtyTrackingList<String> list = createList();
+        list.add("e");
+        list.set(0, "aa");
+        list.remove(2);
+        list.clearDirty();
+
+        assertFalse(list.isDirty());
+        assertEquals(-1, list.nextDirtyIndex(0));
+        assertTrue(list.getRemoved().isEmpty());
+        assertEquals(Arrays.asList("aa", "b", "d", "e"), list);
+        assertEquals(DirtyState.UNMODIFIED, list.getState(3));
+    }
+
+    public void testIndexOutOfBounds() {
+        DirtyTrackingList<String> list = createList();
+        try {
+            list.get(4);
+            fail("Index is out of bounds");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // it is OK
+        }
+        try {
+            list.add(5, "e");
+            fail("Index is out of bounds");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // it is OK
+        }
+        try {
+            list.getState(-1);
+            fail("Index is out of bounds");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // it is OK
+        }
+    }
+}
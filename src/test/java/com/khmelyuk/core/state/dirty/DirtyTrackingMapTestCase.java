@@ -0,0 +1,137 @@
+package com.khmelyuk.core.state.dirty;
+
+import com.khmelyuk.core.BaseTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for the <code>DirtyTrackingMap</code> class.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class DirtyTrackingMapTestCase extends BaseTestCase {
+
+    private DirtyTrackingMap<String, Integer> createMap() {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+        return new DirtyTrackingMap<String, Integer>(map);
+    }
+
+    public void testInitialEntriesAreUnmodified() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+
+        assertEquals(3, map.size());
+        assertEquals(Integer.valueOf(2), map.get("b"));
+        assertFalse(map.isDirty());
+        assertEquals(DirtyState.UNMODIFIED, map.getState("a"));
+        assertNull(map.getState("d"));
+    }
+
+    public void testChanges() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        map.put("d", 4);
+        map.put("b", 20);
+        map.remove("c");
+        map.remove("e");
+
+        Map<String, DirtyState> changes = map.getChanges();
+        assertEquals(Arrays.asList("d", "b", "c"), new ArrayList<String>(changes.keySet()));
+        assertEquals(DirtyState.ADDED, changes.get("d"));
+        assertEquals(DirtyState.MODIFIED, changes.get("b"));
+        assertEquals(DirtyState.REMOVED, changes.get("c"));
+        assertEquals(3, map.getChangesCount());
+    }
+
+    public void testCollapseAddedAndRemoved() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        map.put("d", 4);
+        map.remove("d");
+
+        assertFalse(map.isDirty());
+        assertNull(map.getState("d"));
+    }
+
+    public void testCollapseAddedAndModified() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        map.put("d", 4);
+        map.put("d", 40);
+        map.markModified("d");
+
+        assertEquals(DirtyState.ADDED, map.getState("d"));
+        assertEquals(1, map.getChangesCount());
+    }
+
+    public void testCollapseRemovedAndAdded() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        map.remove("a");
+        assertEquals(DirtyState.REMOVED, map.getState("a"));
+
+        map.put("a", 10);
+        assertEquals(DirtyState.MODIFIED, map.getState("a"));
+        assertEquals(1, map.getChangesCount());
+    }
+
+    public void testMarkModified() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+
+        assertTrue(map.markModified("a"));
+        assertFalse(map.markModified("d"));
+        assertEquals(DirtyState.MODIFIED, map.getState("a"));
+        assertNull(map.getState("d"));
+    }
+
+    public void testClear() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        map.put("d", 4);
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertEquals(3, map.getChangesCount());
+        assertNull(map.getState("d"));
+        assertEquals(DirtyState.REMOVED, map.getState("a"));
+    }
+
+    public void testDrainChanges() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        map.put("d", 4);
+        map.remove("a");
+
+        Map<String, DirtyState> changes = map.drainChanges();
+        assertEquals(2, changes.size());
+        assertEquals(Arrays.asList("d"), DirtyUtils.getValuesWithState(changes, DirtyState.ADDED));
+        assertEquals(Arrays.asList("a"), DirtyUtils.getValuesWithState(changes, DirtyState.REMOVED));
+
+        assertFalse(map.isDirty());
+        assertEquals(DirtyState.UNMODIFIED, map.getState("d"));
+        assertNull(map.getState("a"));
+
+        map.put("d", 40);
+        assertEquals(DirtyState.MODIFIED, map.getState("d"));
+        assertEquals(2, changes.size());
+    }
+
+    public void testViewsAreUnmodifiable() {
+        DirtyTrackingMap<String, Integer> map = createMap();
+        try {
+            map.keySet().remove("a");
+            fail("Key set is unmodifiable");
+        }
+        catch (UnsupportedOperationException e) {
+            // it is OK
+        }
+        try {
+            map.entrySet().iterator().next().setValue(10);
+            fail("Entry set is unmodifiable");
+        }
+        catch (UnsupportedOperationException e) {
+            // it is OK
+        }
+        assertFalse(map.isDirty());
+    }
+}
@@ -140,4 +140,48 @@ public class DirtyUtilsTestCase extends BaseTestCase {
         assertNotNull(unmodifiedOnly);
         assertEquals(unmodifiedOnly.size(), 0);
     }
+
+    public void testPartitionCollection() {
+        Collection<DirtyWrapper<Integer>> wrapped = new ArrayList<DirtyWrapper<Integer>>();
+        wrapped.add(new DirtyWrapper<Integer>(1, DirtyState.ADDED));
+        wrapped.add(new DirtyWrapper<Integer>(2, DirtyState.MODIFIED));
+        wrapped.add(new DirtyWrapper<Integer>(3, DirtyState.ADDED));
+        wrapped.add(new DirtyWrapper<Integer>(4, DirtyState.UNMODIFIED));
+
+        DirtyPartition<Integer> partition = DirtyUtils.partition(wrapped);
+
+        assertEquals(ListUtils.listOf(1, 3), partition.getAdded());
+        assertEquals(ListUtils.listOf(2), partition.getModified());
+        assertEquals(ListUtils.listOf(4), partition.getUnmodified());
+        assertTrue(partition.getRemoved().isEmpty());
+        assertEquals(0, partition.size(DirtyState.REMOVED));
+        assertTrue(partition.isDirty());
+    }
+
+    public void testPartitionMap() {
+        Map<Integer, DirtyState> wrapped = new HashMap<Integer, DirtyState>();
+        wrapped.put(1, DirtyState.UNMODIFIED);
+        wrapped.put(2, DirtyState.REMOVED);
+        wrapped.put(3, DirtyState.UNMODIFIED);
+
+        DirtyPartition<Integer> partition = DirtyUtils.partition(wrapped);
+
+        assertEquals(1, partition.getRemoved().size());
+        assertTrue(partition.getRemoved().contains(2));
+        assertEquals(2, partition.getUnmodified().size());
+        assertTrue(partition.getAdded().isEmpty());
+
+        wrapped.remove(2);
+        assertFalse(DirtyUtils.partition(wrapped).isDirty());
+    }
+
+    public void testPartitionNull() {
+        try {
+            DirtyUtils.partition((Collection<DirtyWrapper<Object>>) null);
+            unexpected("null can't be partitioned.");
+        }
+        catch (IllegalArgumentException e) {
+            // that's OK
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.AsyncStateChangeListener.OverflowPolicy;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class AsyncStateChangeListenerTestCase extends BaseTestCase {
+
+    List<Runnable> tasks;
+    Executor executor;
+    List<Object> changes;
+    StateChangeListener listener;
+
+    public void setUp() {
+        tasks = new ArrayList<Runnable>();
+        executor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        changes = new ArrayList<Object>();
+        listener = new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                changes.add(toState.getState());
+            }
+        };
+    }
+
+    public void testDeliverInOrder() {
+        AsyncStateChangeListener async = new AsyncStateChangeListener(listener, executor, 10, OverflowPolicy.BLOCK);
+        async.onChange(new State(0), new State(1));
+        async.onChange(new State(1), new State(2));
+        async.onChange(new State(2), new State(3));
+
+        assertEquals(0, changes.size());
+        assertEquals(3, async.getQueueSize());
+        assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+        assertEquals(3, changes.size());
+        assertEquals(1, changes.get(0));
+        assertEquals(2, changes.get(1));
+        assertEquals(3, changes.get(2));
+        assertEquals(0, async.getQueueSize());
+
+        async.onChange(new State(3), new State(4));
+        assertEquals(1, tasks.size());
+    }
+
+    public void testDropPolicy() {
+        AsyncStateChangeListener async = new AsyncStateChangeListener(listener, executor, 2, OverflowPolicy.DROP);
+        async.onChange(new State(0), new State(1));
+        async.onChange(new State(1), new State(2));
+        async.onChange(new State(2), new State(3));
+
+        assertEquals(2, async.getQueueSize());
+        assertEquals(1, async.getDroppedCount());
+
+        tasks.remove(0).run();
+        assertEquals(2, changes.size());
+        assertEquals(1, changes.get(0));
+        assertEquals(2, changes.get(1));
+    }
+
+    public void testCallerRunsPolicy() {
+        AsyncStateChangeListener async = new AsyncStateChangeListener(listener, executor, 2, OverflowPolicy.CALLER_RUNS);
+        async.onChange(new State(0), new State(1));
+        async.onChange(new State(1), new State(2));
+        assertEquals(0, changes.size());
+
+        // queue is full, so caller delivers queued changes and own change
+        async.onChange(new State(2), new State(3));
+        assertEquals(0, async.getQueueSize());
+        assertEquals(3, changes.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, changes.get(i));
+        }
+
+        // the scheduled task has nothing to deliver now
+        tasks.remove(0).run();
+        assertEquals(3, changes.size());
+
+        async.onChange(new State(3), new State(4));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(4, changes.size());
+    }
+
+    public void testWithStateMachine() {
+        StateMachine machine = new StateMachine();
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new ElseCondition()));
+        machine.setInitialState(stateA);
+        machine.addStateChangeListener(new AsyncStateChangeListener(listener, new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, 1, OverflowPolicy.BLOCK));
+
+        machine.start();
+        machine.input("x");
+        assertEquals(1, changes.size());
+        assertEquals("b", changes.get(0));
+    }
+}
@@ -0,0 +1,130 @@
+// Generated by StateMachineCodeGenerator, do not edit.
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.state.machine.GeneratedStateMachine;
+import com.khmelyuk.core.state.machine.StateMachineDefinition;
+
+import java.io.Serializable;
+
+public final class GeneratedOrderStateMachine extends GeneratedStateMachine {
+
+    public static final long FINGERPRINT = 5149494432107404924L;
+
+    public GeneratedOrderStateMachine(StateMachineDefinition definition) {
+        super(definition, FINGERPRINT);
+        checkLiterals0();
+    }
+
+    private void checkLiterals0() {
+        checkValue(0, 1, com.khmelyuk.core.state.machine.StateMachineCodeGeneratorTestCase.Event.PAY);
+        checkValue(0, 2, com.khmelyuk.core.state.machine.StateMachineCodeGeneratorTestCase.Event.CANCEL);
+        checkValue(0, 3, "cancel");
+        checkValue(0, 4, Integer.valueOf(-1));
+        checkRange(0, 5, 1000.0, true, Double.POSITIVE_INFINITY, false);
+        checkValue(1, 0, "ship");
+        checkValue(1, 1, null);
+        checkValue(1, 2, "Aa\nhold");
+    }
+
+    protected int findTransition(int state, Serializable input) {
+        switch (state) {
+            case 0:
+                return findTransition0(input);
+            case 1:
+                return findTransition1(input);
+            case 2:
+                return findTransition2(input);
+            case 3:
+                return findTransition3(input);
+            case 4:
+                return findTransition4(input);
+            default:
+                return -1;
+        }
+    }
+
+    // state created
+    private int findTransition0(Serializable input) {
+        int found = -1;
+        if (input instanceof String) {
+            String value = (String) input;
+            switch (value.hashCode()) {
+                case -1367724422:
+                    if (value.equals("cancel")) {
+                        found = 3;
+                    }
+                    break;
+            }
+        }
+        else if (input instanceof Integer) {
+            switch (((Integer) input).intValue()) {
+                case -1:
+                    found = 4;
+                    break;
+            }
+        }
+        else if (input instanceof com.khmelyuk.core.state.machine.StateMachineCodeGeneratorTestCase.Event) {
+            switch ((com.khmelyuk.core.state.machine.StateMachineCodeGeneratorTestCase.Event) input) {
+                case CANCEL:
+                    found = 2;
+                    break;
+                case PAY:
+                    found = 1;
+                    break;
+            }
+        }
+        double number = (input instanceof Number ? ((Number) input).doubleValue() : Double.NaN);
+        if ((found == -1 || found > 0) && match(0, 0, input)) {
+            return 0;
+        }
+        if ((found == -1 || found > 5) && number >= 1000.0 && number < Double.POSITIVE_INFINITY) {
+            return 5;
+        }
+        if (found != -1) {
+            return found;
+        }
+        return -1;
+    }
+
+    // state paid
+    private int findTransition1(Serializable input) {
+        int found = -1;
+        if (input instanceof String) {
+            String value = (String) input;
+            switch (value.hashCode()) {
+                case 3529276:
+                    if (value.equals("ship")) {
+                        found = 0;
+                    }
+                    break;
+                case 347668361:
+                    if (value.equals("Aa\nhold")) {
+                        found = 2;
+                    }
+                    break;
+            }
+        }
+        else if (input == null) {
+            found = 1;
+        }
+        if (found != -1) {
+            return found;
+        }
+        return -1;
+    }
+
+    // state shipped
+    private int findTransition2(Serializable input) {
+        return -1;
+    }
+
+    // state cancelled
+    private int findTransition3(Serializable input) {
+        return -1;
+    }
+
+    // state review
+    private int findTransition4(Serializable input) {
+        return 0;
+    }
+}
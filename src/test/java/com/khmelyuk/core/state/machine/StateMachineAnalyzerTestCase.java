@@ -0,0 +1,134 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineAnalyzerTestCase extends BaseTestCase {
+
+    StateMachine machine;
+    State start;
+    State left;
+    State right;
+    State done;
+    State orphan;
+
+    /**
+     * start -l-> left, start -r-> right, left -x-> done, right -x-> done,
+     * left and right are equivalent, orphan is not reachable.
+     */
+    public void setUp() {
+        machine = new StateMachine();
+        start = machine.addState(new State("start"));
+        left = machine.addState(new State("left"));
+        right = machine.addState(new State("right"));
+        done = machine.addState(new State("done"));
+        orphan = machine.addState(new State("orphan"));
+
+        machine.addTransition(start, left, new Transition(new EqualsCondition("l")));
+        machine.addTransition(start, right, new Transition(new EqualsCondition("r")));
+        machine.addTransition(left, done, new Transition(new EqualsCondition("x")));
+        machine.addTransition(left, start, new Transition(new ElseCondition()));
+        machine.addTransition(right, done, new Transition(new EqualsCondition("x")));
+        machine.addTransition(right, start, new Transition(new ElseCondition()));
+        machine.addTransition(orphan, done, new Transition(new EqualsCondition("x")));
+
+        machine.setInitialState(start);
+        machine.addAcceptableState(done);
+    }
+
+    public void testFindUnreachableStates() {
+        Set<State> unreachable = StateMachineAnalyzer.findUnreachableStates(machine);
+        assertEquals(1, unreachable.size());
+        assertTrue(unreachable.contains(orphan));
+    }
+
+    public void testIsMinimizable() {
+        assertTrue(StateMachineAnalyzer.isMinimizable(machine));
+
+        machine.addTransition(done, start, new Transition(new EqualsCondition("again"), new TransitionAction() {
+            public void run(Transition transition, State from, State to) {
+                // do nothing
+            }
+        }));
+        assertFalse(StateMachineAnalyzer.isMinimizable(machine));
+    }
+
+    public void testMinimize() {
+        StateMachine minimized = StateMachineAnalyzer.minimize(machine);
+
+        assertEquals(3, minimized.getStates().size());
+        assertTrue(minimized.containsState(start));
+        assertTrue(minimized.containsState(left));
+        assertFalse(minimized.containsState(right));
+        assertFalse(minimized.containsState(orphan));
+        assertSame(start, minimized.getInitialState());
+        assertTrue(minimized.getAcceptableStates().contains(done));
+
+        StateMachineDefinition originalDefinition = machine.createDefinition();
+        StateMachineDefinition minimizedDefinition = minimized.createDefinition();
+        List<List<String>> inputs = Arrays.asList(
+                Arrays.asList("l", "x"),
+                Arrays.asList("r", "y", "r", "x"),
+                Arrays.asList("r", "r"),
+                Arrays.asList("z", "l", "l", "x", "x"));
+        for (List<String> each : inputs) {
+            assertEquals(run(originalDefinition, each), run(minimizedDefinition, each));
+        }
+    }
+
+    public void testMinimizeKeepsDifferentStates() {
+        // b and c are both not acceptable, but only b leads back to a
+        StateMachine other = new StateMachine();
+        State a = other.addState(new State("a"));
+        State b = other.addState(new State("b"));
+        State c = other.addState(new State("c"));
+        other.addTransition(a, b, new Transition(new EqualsCondition("b")));
+        other.addTransition(a, c, new Transition(new EqualsCondition("c")));
+        other.addTransition(b, a, new Transition(new EqualsCondition("x")));
+        other.setInitialState(a);
+        other.addAcceptableState(a);
+
+        StateMachine minimized = StateMachineAnalyzer.minimize(other);
+        assertEquals(3, minimized.getStates().size());
+    }
+
+    public void testMinimizeWithActionsOnlyPrunes() {
+        State withAction = new State("action", new StateAction() {
+            public void run(State state, Transition transition) {
+                // do nothing
+            }
+        });
+        machine.addState(withAction);
+        machine.addTransition(done, withAction, new Transition(new EqualsCondition("a")));
+
+        StateMachine minimized = StateMachineAnalyzer.minimize(machine);
+        assertEquals(5, minimized.getStates().size());
+        assertFalse(minimized.containsState(orphan));
+    }
+
+    public void testWithoutInitialState() {
+        try {
+            StateMachineAnalyzer.findUnreachableStates(new StateMachine());
+            fail("State machine without initial state is analyzed.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    private static boolean run(StateMachineDefinition definition, List<String> inputs) {
+        StateMachineInstance instance = definition.newInstance();
+        instance.start();
+        instance.inputAll(inputs);
+        return instance.isSuccess();
+    }
+}
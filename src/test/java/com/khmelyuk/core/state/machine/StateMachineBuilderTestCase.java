@@ -0,0 +1,117 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineBuilderTestCase extends BaseTestCase {
+
+    public void testBuild() {
+        StateMachineBuilder builder = new StateMachineBuilder();
+        State stateA = builder.addState(new State("a"));
+        State stateB = builder.addState(new State("b"));
+        Transition transition = builder.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        assertTrue(builder.setInitialState(stateA));
+        assertFalse(builder.setInitialState(stateA));
+        builder.addAcceptableState(stateB);
+
+        StateMachine machine = builder.build();
+        assertEquals(2, machine.getStates().size());
+        assertEquals(1, machine.getTransitions().size());
+        assertSame(stateA, machine.getInitialState());
+        assertEquals(stateB, machine.getTransitionsWithStates(transition).get(transition).getSecond());
+
+        machine.start();
+        assertSame(stateB, machine.input("b"));
+        assertTrue(machine.isSuccess());
+
+        // built machine doesn't share states with builder
+        builder.addState(new State("c"));
+        assertEquals(2, machine.getStates().size());
+        assertEquals(3, builder.build().getStates().size());
+    }
+
+    public void testBuildLarge() {
+        int size = 20000;
+        StateMachineBuilder builder = new StateMachineBuilder(size);
+        State[] states = new State[size];
+        for (int i = 0; i < size; i++) {
+            states[i] = builder.addState(new State(i));
+        }
+        for (int i = 0; i < size - 1; i++) {
+            builder.addTransition(states[i], states[i + 1], new Transition(new EqualsCondition("next")));
+        }
+        builder.setInitialState(states[0]);
+
+        StateMachineDefinition definition = builder.buildDefinition();
+        assertEquals(size, definition.getStatesCount());
+        assertEquals(size - 1, definition.getTransitionsCount());
+
+        StateMachineInstance instance = definition.newInstance();
+        instance.start();
+        instance.input("next");
+        assertTrue(instance.isInState(1));
+    }
+
+    public void testDuplicateState() {
+        StateMachineBuilder builder = new StateMachineBuilder();
+        builder.addState(new State("a"));
+        try {
+            builder.addState(new State("a"));
+            fail("Duplicated state is added.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+
+    public void testDuplicateTransition() {
+        StateMachineBuilder builder = new StateMachineBuilder();
+        State stateA = builder.addState(new State("a"));
+        State stateB = builder.addState(new State("b"));
+        Transition transition = builder.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        try {
+            builder.addTransition(stateA, stateB, transition);
+            fail("Duplicated transition is added.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testTransitionWithUnknownState() {
+        StateMachineBuilder builder = new StateMachineBuilder();
+        State stateA = builder.addState(new State("a"));
+        try {
+            builder.addTransition(stateA, new State("b"), new Transition(new EqualsCondition("b")));
+            fail("Transition to unknown state is added.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+
+    public void testUnknownAcceptableState() {
+        StateMachineBuilder builder = new StateMachineBuilder();
+        try {
+            builder.addAcceptableState(new State("a"));
+            fail("Unknown acceptable state is added.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testBuildDefinitionWithoutInitialState() {
+        try {
+            new StateMachineBuilder().buildDefinition();
+            fail("Definition without initial state is built.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link GeneratedOrderStateMachine} is generated by {@link StateMachineCodeGenerator}
+ * for the state machine created by {@link #createMachine()}.
+ *
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineCodeGeneratorTestCase extends BaseTestCase {
+
+    public enum Event {
+        PAY, CANCEL
+    }
+
+    public static StateMachine createMachine() {
+        return createMachine(-1, 1000, "Aa\nhold");
+    }
+
+    private static StateMachine createMachine(Serializable cancelCode, double reviewAmount, String holdCommand) {
+        StateMachine machine = new StateMachine();
+        State created = machine.addState(new State("created"));
+        State paid = machine.addState(new State("paid"));
+        State shipped = machine.addState(new State("shipped"));
+        State cancelled = machine.addState(new State("cancelled"));
+        State review = machine.addState(new State("review"));
+
+        machine.addTransition(created, review, new Transition(new TransitionCondition() {
+            public boolean match(Serializable value) {
+                return "suspicious".equals(value);
+            }
+        }));
+        machine.addTransition(created, paid, new Transition(new EqualsCondition(Event.PAY)));
+        machine.addTransition(created, cancelled, new Transition(new EqualsCondition(Event.CANCEL)));
+        machine.addTransition(created, cancelled, new Transition(new EqualsCondition("cancel")));
+        machine.addTransition(created, cancelled, new Transition(new EqualsCondition(cancelCode)));
+        machine.addTransition(created, review, new Transition(new RangeCondition(reviewAmount, Double.POSITIVE_INFINITY)));
+        machine.addTransition(paid, shipped, new Transition(new EqualsCondition("ship")));
+        machine.addTransition(paid, review, new Transition(new EqualsCondition(null)));
+        machine.addTransition(paid, review, new Transition(new EqualsCondition(holdCommand)));
+        machine.addTransition(review, created, new Transition(new ElseCondition()));
+
+        machine.setInitialState(created);
+        machine.addAcceptableState(shipped);
+        return machine;
+    }
+
+    public void testGeneratedClassIsUpToDate() {
+        StateMachineDefinition definition = createMachine().createDefinition();
+        assertEquals(definition.getFingerprint(), GeneratedOrderStateMachine.FINGERPRINT);
+    }
+
+    public void testGenerate() {
+        String source = new StateMachineCodeGenerator().generate(createMachine(), "com.example", "Order");
+
+        assertTrue(source.contains("package com.example;"));
+        assertTrue(source.contains("public final class Order extends GeneratedStateMachine {"));
+        assertTrue(source.contains("switch (state) {"));
+        assertTrue(source.contains("if (value.equals(\"cancel\")) {"));
+        assertTrue(source.contains("case PAY:"));
+        assertTrue(source.contains("case -1:"));
+        assertTrue(source.contains("number >= 1000.0 && number < Double.POSITIVE_INFINITY"));
+        assertTrue(source.contains("match(0, 0, input)"));
+        assertTrue(source.contains("if (value.equals(\"Aa\\nhold\")) {"));
+        assertTrue(source.contains("checkValue(0, 1, " + Event.class.getCanonicalName() + ".PAY);"));
+        assertTrue(source.contains("checkRange(0, 5, 1000.0, true, Double.POSITIVE_INFINITY, false);"));
+    }
+
+    public void testGenerateControlCharacters() {
+        StateMachine machine = new StateMachine();
+        State first = machine.addState(new State("first"));
+        State second = machine.addState(new State("second"));
+        machine.addTransition(first, second, new Transition(new EqualsCondition("a\r\n\t\b\f\u0000\u007f\u00e9\"\\")));
+        machine.setInitialState(first);
+
+        String source = new StateMachineCodeGenerator().generate(machine, "", "Control");
+        assertTrue(source.contains("\"a\\r\\n\\t\\b\\f\\000\\177\\u00e9\\\"\\\\\""));
+        assertFalse(source.contains("\\u000a"));
+    }
+
+    public void testGeneratedMachineBehavesAsStateMachine() {
+        Serializable[][] sequences = {
+                {Event.PAY, "ship"},
+                {"cancel"},
+                {-1},
+                {"suspicious", "back", Event.CANCEL},
+                {5000L, "x", Event.PAY, null, 1, Event.PAY, "ship"},
+                {999.9, "unknown", Event.PAY, "ship"},
+                {Event.PAY, "BB\nhold", "Aa\nhold", "back"}
+        };
+        StateMachineDefinition definition = createMachine().createDefinition();
+        for (Serializable[] each : sequences) {
+            StateMachine machine = createMachine();
+            GeneratedOrderStateMachine generated = new GeneratedOrderStateMachine(definition);
+            machine.start();
+            generated.start();
+            for (Serializable input : each) {
+                assertEquals(machine.input(input), generated.input(input));
+            }
+            assertEquals(machine.isSuccess(), generated.isSuccess());
+        }
+    }
+
+    public void testChangedLiteralsAreRejected() {
+        try {
+            new GeneratedOrderStateMachine(createMachine(-1L, 1000, "Aa\nhold").createDefinition());
+            fail("Type of condition value is changed");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+        try {
+            new GeneratedOrderStateMachine(createMachine(-1, 500, "Aa\nhold").createDefinition());
+            fail("Range bound is changed");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+
+        // same hash code, so same fingerprint
+        StateMachineDefinition definition = createMachine(-1, 1000, "BB\nhold").createDefinition();
+        assertEquals(GeneratedOrderStateMachine.FINGERPRINT, definition.getFingerprint());
+        try {
+            new GeneratedOrderStateMachine(definition);
+            fail("Literal is changed");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testListeners() {
+        StateMachine machine = createMachine();
+        final List<String> changes = new ArrayList<String>();
+        machine.addStateChangeListener(new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                changes.add(fromState.getState() + "-" + toState.getState());
+            }
+        });
+
+        GeneratedOrderStateMachine generated = new GeneratedOrderStateMachine(machine.createDefinition());
+        generated.start();
+        generated.input(Event.PAY);
+        generated.input("ship");
+        generated.finish();
+
+        assertEquals(2, changes.size());
+        assertEquals("paid-shipped", changes.get(1));
+        assertTrue(generated.isSuccess());
+        assertEquals("shipped", generated.getFinishState().getState());
+    }
+
+    public void testChangedDefinition() {
+        StateMachine machine = createMachine();
+        machine.addState(new State("archived"));
+        try {
+            new GeneratedOrderStateMachine(machine.createDefinition());
+            fail("Generated state machine is created for changed definition.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+}
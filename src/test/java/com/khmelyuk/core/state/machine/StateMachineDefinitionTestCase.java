@@ -0,0 +1,198 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.util.Arrays;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineDefinitionTestCase extends BaseTestCase {
+
+    StateMachine machine;
+    State stateA;
+    State stateB;
+
+    public void setUp() {
+        machine = new StateMachine();
+        stateA = machine.addState(new State("a"));
+        stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+        machine.addAcceptableState(stateB);
+    }
+
+    public void testCreateDefinition() {
+        StateMachineDefinition definition = machine.createDefinition();
+
+        assertEquals(2, definition.getStatesCount());
+        assertSame(stateA, definition.getInitialState());
+        assertTrue(definition.containsState(stateB));
+        assertTrue(definition.getAcceptableStates().contains(stateB));
+        assertFalse(definition.getAcceptableStates().contains(stateA));
+        assertEquals(1, definition.indexOf(stateB));
+        assertSame(stateB, definition.getState(1));
+    }
+
+    public void testCreateDefinitionWithoutInitialState() {
+        try {
+            new StateMachine().createDefinition();
+            fail("Definition without initial state is created.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testInstances() {
+        StateMachineDefinition definition = machine.createDefinition();
+        StateMachineInstance first = definition.newInstance();
+        StateMachineInstance second = definition.newInstance();
+
+        assertNull(first.getCurrentState());
+        assertNull(first.input("b"));
+
+        first.start();
+        second.start();
+        assertSame(stateB, first.input("b"));
+        assertSame(stateA, second.input("x"));
+
+        assertTrue(first.isInState("b"));
+        assertTrue(second.isInState("a"));
+        assertTrue(first.isSuccess());
+        assertTrue(second.isFailed());
+
+        first.finish();
+        assertFalse(first.isInProgress());
+        assertSame(stateB, first.getFinishState());
+        assertTrue(second.isInProgress());
+        assertNull(second.getFinishState());
+    }
+
+    public void testStartInstanceTwice() {
+        StateMachineInstance instance = machine.createDefinition().newInstance();
+        instance.start();
+        try {
+            instance.start();
+            fail("Instance is started twice.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testListeners() {
+        final int[] count = new int[1];
+        machine.addStateChangeListener(new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                count[0]++;
+            }
+        });
+
+        StateMachineInstance instance = machine.createDefinition().newInstance();
+        instance.start();
+        instance.input("b");
+        instance.input("b");
+        instance.input("a");
+
+        assertEquals(2, count[0]);
+    }
+
+    public void testFailedListenerKeepsNewState() {
+        machine.addStateChangeListener(new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                throw new IllegalArgumentException("Failed listener.");
+            }
+        });
+
+        StateMachineDefinition definition = machine.createDefinition();
+        StateMachineInstance instance = definition.newInstance();
+        instance.start();
+        try {
+            instance.input("b");
+            fail("Listener error is lost.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        assertSame(stateB, instance.getCurrentState());
+
+        try {
+            instance.inputAll(Arrays.asList("a", "b"));
+            fail("Listener error is lost.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        assertSame(stateA, instance.getCurrentState());
+
+        StateMachineStore store = definition.newStore(1);
+        store.start(0);
+        try {
+            store.input(0, "b");
+            fail("Listener error is lost.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        assertSame(stateB, store.getCurrentState(0));
+    }
+
+    public void testStore() {
+        StateMachineStore store = machine.createDefinition().newStore(2);
+        assertEquals(2, store.getCapacity());
+        assertFalse(store.isStarted(0));
+        assertNull(store.input(0, "b"));
+        assertEquals(-1, store.getCurrentStateIndex(0));
+
+        store.start(0);
+        store.start(1);
+        assertSame(stateB, store.input(0, "b"));
+        assertSame(stateA, store.input(1, "a"));
+        assertTrue(store.isSuccess(0));
+        assertTrue(store.isFailed(1));
+
+        store.finish(0);
+        assertFalse(store.isInProgress(0));
+        assertTrue(store.isInProgress(1));
+        assertSame(stateB, store.getFinishState(0));
+        assertNull(store.getFinishState(1));
+        assertSame(stateA, store.input(0, "a"));
+        assertSame(stateA, store.getFinishState(0));
+
+        store.ensureCapacity(10);
+        assertTrue(store.getCapacity() >= 10);
+        assertSame(stateA, store.getCurrentState(0));
+        assertSame(stateA, store.getCurrentState(1));
+        assertFalse(store.isStarted(9));
+
+        store.reset(0);
+        assertFalse(store.isStarted(0));
+        assertNull(store.getCurrentState(0));
+    }
+
+    public void testInstanceInputAll() {
+        final int[] count = new int[1];
+        machine.addStateChangeListener(new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                count[0]++;
+            }
+        });
+        StateMachineInstance instance = machine.createDefinition().newInstance();
+        instance.start();
+
+        assertSame(stateA, instance.inputAll(Arrays.asList("b", "a", "b", "a")));
+        assertEquals(4, count[0]);
+
+        assertSame(stateB, instance.inputAll(Arrays.asList("b", "a", "b"), InputOption.NOTIFY_ONCE));
+        assertEquals(5, count[0]);
+
+        instance = machine.createDefinition().newInstance();
+        instance.start();
+        assertSame(stateB, instance.inputAll(Arrays.asList("b", "a", "b"), InputOption.STOP_ON_ACCEPTABLE));
+        assertEquals(6, count[0]);
+    }
+}
@@ -0,0 +1,105 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineMetricsTestCase extends BaseTestCase {
+
+    StateMachine machine;
+    State stateA;
+    State stateB;
+    Transition toB;
+    Transition toA;
+
+    public void setUp() {
+        StateAction action = new StateAction() {
+            public void run(State state, Transition transition) {
+                // do nothing
+            }
+        };
+
+        machine = new StateMachine();
+        stateA = machine.addState(new State("a", action));
+        stateB = machine.addState(new State("b", action, action));
+        toB = machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b"), new TransitionAction() {
+            public void run(Transition transition, State from, State to) {
+                // do nothing
+            }
+        }));
+        toA = machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+    }
+
+    public void testDisabledByDefault() {
+        assertNull(machine.getMetrics());
+        assertFalse(machine.isCompiled());
+    }
+
+    public void testMetrics() {
+        StateMachineMetrics metrics = machine.enableMetrics();
+        assertTrue(machine.isCompiled());
+        assertSame(metrics, machine.enableMetrics());
+        assertSame(metrics, machine.getMetrics());
+
+        machine.start();
+        machine.input("b");
+        machine.input("a");
+        machine.input("b");
+        machine.input("x");
+
+        StateMachineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getTransitionCount(toB));
+        assertEquals(1, snapshot.getTransitionCount(toA));
+        assertEquals(2, snapshot.getDwellCount(stateA));
+        assertEquals(1, snapshot.getDwellCount(stateB));
+        assertTrue(snapshot.getDwellTime(stateA) >= 0);
+        assertEquals(0, snapshot.getDwellCount(new State("c")));
+
+        // 2 entries to b, 1 exit from b, 1 entry to a
+        assertEquals(4, sum(snapshot.getStateActionLatencies()));
+        assertEquals(2, sum(snapshot.getTransitionActionLatencies()));
+    }
+
+    public void testLatencyBuckets() {
+        StateMachineMetrics metrics = machine.enableMetrics();
+        metrics.recordStateAction(0);
+        metrics.recordStateAction(1);
+        metrics.recordStateAction(Long.MAX_VALUE);
+
+        long[] latencies = metrics.snapshot().getStateActionLatencies();
+        assertEquals(StateMachineMetrics.BUCKETS, latencies.length);
+        assertEquals(1, latencies[0]);
+        assertEquals(1, latencies[1]);
+        assertEquals(1, latencies[StateMachineMetrics.BUCKETS - 1]);
+    }
+
+    public void testSnapshotIsImmutable() {
+        StateMachineMetrics metrics = machine.enableMetrics();
+        machine.start();
+
+        StateMachineMetrics.Snapshot snapshot = metrics.snapshot();
+        machine.input("b");
+
+        assertEquals(0, snapshot.getTransitionCount(toB));
+        assertEquals(1, metrics.snapshot().getTransitionCount(toB));
+        try {
+            snapshot.getTransitionCounts().clear();
+            fail("Snapshot is changed.");
+        }
+        catch (UnsupportedOperationException e) {
+            // it is OK
+        }
+    }
+
+    private static long sum(long[] values) {
+        long result = 0;
+        for (long each : values) {
+            result += each;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,242 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.flow.Publisher;
+import com.khmelyuk.core.flow.Subscriber;
+import com.khmelyuk.core.flow.Subscription;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineProcessorTestCase extends BaseTestCase {
+
+    StateMachineInstance instance;
+
+    public void setUp() {
+        StateMachine machine = new StateMachine();
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+
+        instance = machine.createDefinition().newInstance();
+        instance.start();
+    }
+
+    public void testBackPressure() {
+        ListPublisher publisher = new ListPublisher(Arrays.<Serializable>asList("b", "x", "a", "b", "a", "b"));
+        StateMachineProcessor processor = new StateMachineProcessor(instance, 4);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+        assertTrue(publisher.requests.isEmpty());
+
+        // "x" makes no change, so one more input is requested for the second change
+        subscriber.subscription.request(2);
+        assertEquals(Arrays.asList(2L, 1L), publisher.requests);
+        assertEquals(2, subscriber.changes.size());
+        assertEquals("b", subscriber.changes.get(0).getToState().getState());
+        assertEquals("a", subscriber.changes.get(1).getToState().getState());
+
+        subscriber.subscription.request(10);
+        assertEquals(5, subscriber.changes.size());
+        assertTrue(subscriber.completed);
+        for (Long each : publisher.requests) {
+            assertTrue(each <= 4);
+        }
+    }
+
+    public void testOneSubscriberOnly() {
+        StateMachineProcessor processor = new StateMachineProcessor(instance);
+        processor.subscribe(new CollectingSubscriber());
+
+        CollectingSubscriber second = new CollectingSubscriber();
+        processor.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    public void testWrongRequest() {
+        ListPublisher publisher = new ListPublisher(Arrays.<Serializable>asList("b"));
+        StateMachineProcessor processor = new StateMachineProcessor(instance);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(publisher.cancelled);
+    }
+
+    public void testWrongRequestWhileEmitting() {
+        ListPublisher publisher = new ListPublisher(Arrays.<Serializable>asList("b", "a", "b"));
+        StateMachineProcessor processor = new StateMachineProcessor(instance);
+        final boolean[] nested = new boolean[1];
+        CollectingSubscriber subscriber = new CollectingSubscriber() {
+            boolean emitting;
+
+            public void onNext(StateMachineProcessor.StateChange item) {
+                emitting = true;
+                super.onNext(item);
+                subscription.request(-1);
+                emitting = false;
+            }
+
+            public void onError(Throwable error) {
+                nested[0] |= emitting;
+                super.onError(error);
+            }
+        };
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        subscriber.subscription.request(3);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertFalse("Error is signalled inside onNext.", nested[0]);
+        assertEquals(1, subscriber.terminalSignals);
+        assertEquals(1, subscriber.changes.size());
+        assertTrue(publisher.cancelled);
+    }
+
+    public void testItemsDroppedAfterCancel() {
+        ListPublisher publisher = new ListPublisher(Arrays.<Serializable>asList("b", "a"));
+        StateMachineProcessor processor = new StateMachineProcessor(instance);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.changes.size());
+        subscriber.subscription.cancel();
+
+        // item in flight is received after cancel
+        processor.onNext("a");
+        assertEquals(1, subscriber.changes.size());
+        assertEquals("b", instance.getCurrentState().getState());
+
+        processor.onError(new IllegalStateException());
+        processor.onNext("a");
+        assertEquals(1, subscriber.changes.size());
+        assertEquals("b", instance.getCurrentState().getState());
+    }
+
+    public void testCompletedBeforeSubscribe() {
+        StateMachineProcessor processor = new StateMachineProcessor(instance);
+        processor.onSubscribe(new ListPublisher(new ArrayList<Serializable>()).new ListSubscription(processor));
+        processor.onComplete();
+
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        processor.subscribe(subscriber);
+        assertTrue(subscriber.completed);
+        assertEquals(1, subscriber.terminalSignals);
+    }
+
+    public void testCompletedWhileSubscribing() {
+        final StateMachineProcessor processor = new StateMachineProcessor(instance);
+        processor.onSubscribe(new ListPublisher(new ArrayList<Serializable>()).new ListSubscription(processor));
+
+        CollectingSubscriber subscriber = new CollectingSubscriber() {
+            public void onSubscribe(Subscription subscription) {
+                super.onSubscribe(subscription);
+                // upstream completes before subscribe() is finished
+                assertFalse(completed);
+                processor.onComplete();
+                assertFalse(completed);
+            }
+        };
+        processor.subscribe(subscriber);
+        assertTrue(subscriber.completed);
+        assertEquals(1, subscriber.terminalSignals);
+
+        processor.onComplete();
+        processor.onError(new IllegalStateException());
+        assertEquals(1, subscriber.terminalSignals);
+    }
+
+    /**
+     * Synchronous publisher of the list items.
+     */
+    static class ListPublisher implements Publisher<Serializable> {
+
+        final List<Serializable> items;
+        final List<Long> requests = new ArrayList<Long>();
+        boolean cancelled;
+        int position;
+
+        ListPublisher(List<Serializable> items) {
+            this.items = items;
+        }
+
+        public void subscribe(Subscriber<? super Serializable> subscriber) {
+            subscriber.onSubscribe(new ListSubscription(subscriber));
+        }
+
+        class ListSubscription implements Subscription {
+
+            final Subscriber<? super Serializable> subscriber;
+            long demand;
+            boolean emitting;
+
+            ListSubscription(Subscriber<? super Serializable> subscriber) {
+                this.subscriber = subscriber;
+            }
+
+            public void request(long n) {
+                requests.add(n);
+                demand += n;
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+                while (demand > 0 && position < items.size() && !cancelled) {
+                    demand--;
+                    subscriber.onNext(items.get(position++));
+                }
+                emitting = false;
+                if (position == items.size() && !cancelled) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+            }
+
+            public void cancel() {
+                cancelled = true;
+            }
+        }
+    }
+
+    static class CollectingSubscriber implements Subscriber<StateMachineProcessor.StateChange> {
+
+        final List<StateMachineProcessor.StateChange> changes = new ArrayList<StateMachineProcessor.StateChange>();
+        Subscription subscription;
+        Throwable error;
+        boolean completed;
+        int terminalSignals;
+
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(StateMachineProcessor.StateChange item) {
+            changes.add(item);
+        }
+
+        public void onError(Throwable error) {
+            this.error = error;
+            terminalSignals++;
+        }
+
+        public void onComplete() {
+            completed = true;
+            terminalSignals++;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineRuntimeTestCase extends BaseTestCase {
+
+    StateMachineDefinition definition;
+    StateMachineRuntime runtime;
+
+    public void setUp() {
+        StateMachine machine = new StateMachine();
+        State previous = machine.addState(new State(0));
+        machine.setInitialState(previous);
+        for (int i = 1; i <= 100; i++) {
+            State state = machine.addState(new State(i));
+            machine.addTransition(previous, state, new Transition(new EqualsCondition("next")));
+            previous = state;
+        }
+        definition = machine.createDefinition();
+        runtime = new StateMachineRuntime(definition, 4, Executors.defaultThreadFactory());
+        runtime.start();
+    }
+
+    public void tearDown() throws Exception {
+        runtime.shutdown();
+        assertTrue(runtime.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    public void testInput() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            for (int id = 0; id < 50; id++) {
+                if (i < id) {
+                    runtime.input(id, "next");
+                }
+            }
+        }
+
+        for (int id = 1; id < 50; id++) {
+            assertEquals(id, runtime.getCurrentState(id).get(10, TimeUnit.SECONDS).getState());
+        }
+        assertNull(runtime.getCurrentState(0).get(10, TimeUnit.SECONDS));
+    }
+
+    public void testRemove() throws Exception {
+        runtime.input("a", "next");
+        runtime.input("a", "next");
+        assertEquals(2, runtime.getCurrentState("a").get(10, TimeUnit.SECONDS).getState());
+
+        runtime.remove("a");
+        assertNull(runtime.getCurrentState("a").get(10, TimeUnit.SECONDS));
+
+        runtime.input("a", "next");
+        assertEquals(1, runtime.getCurrentState("a").get(10, TimeUnit.SECONDS).getState());
+    }
+
+    public void testInputAfterShutdown() throws Exception {
+        runtime.shutdown();
+        try {
+            runtime.input("a", "next");
+            fail("Input is accepted after shutdown.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testShutdownWhileSending() throws Exception {
+        final List<Future<State>> futures = new ArrayList<Future<State>>();
+        final CountDownLatch started = new CountDownLatch(4);
+        final Thread[] senders = new Thread[4];
+        for (int i = 0; i < senders.length; i++) {
+            final int sender = i;
+            senders[i] = new Thread(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {
+                        for (int id = 0; ; id++) {
+                            runtime.input(id * senders.length + sender, "next");
+                            Future<State> future = runtime.getCurrentState(id * senders.length + sender);
+                            synchronized (futures) {
+                                futures.add(future);
+                            }
+                        }
+                    }
+                    catch (IllegalStateException e) {
+                        // runtime is shut down
+                    }
+                }
+            });
+            senders[i].start();
+        }
+
+        started.await();
+        Thread.sleep(10);
+        runtime.shutdown();
+        for (Thread each : senders) {
+            each.join(10000);
+            assertFalse(each.isAlive());
+        }
+
+        // each accepted request is completed
+        synchronized (futures) {
+            for (Future<State> each : futures) {
+                assertEquals(1, each.get(10, TimeUnit.SECONDS).getState());
+            }
+        }
+    }
+
+    public void testBoundedMailbox() throws Exception {
+        final StateMachineRuntime bounded = new StateMachineRuntime(
+                definition, 1, 2, Executors.defaultThreadFactory());
+        bounded.input("a", "next");
+        bounded.input("a", "next");
+
+        Thread sender = new Thread() {
+            public void run() {
+                bounded.input("a", "next");
+            }
+        };
+        sender.start();
+        sender.join(100);
+        assertTrue("Sender is not blocked by full mailbox.", sender.isAlive());
+
+        bounded.start();
+        sender.join(10000);
+        assertFalse(sender.isAlive());
+        assertEquals(3, bounded.getCurrentState("a").get(10, TimeUnit.SECONDS).getState());
+
+        bounded.shutdown();
+        assertTrue(bounded.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,151 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineSimulatorTestCase extends BaseTestCase {
+
+    StateMachineDefinition definition;
+    State stateA;
+    State stateB;
+    ExecutorService executor;
+
+    public void setUp() {
+        StateMachine machine = new StateMachine();
+        stateA = machine.addState(new State("a"));
+        stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+        machine.addAcceptableState(stateB);
+        definition = machine.createDefinition();
+
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testRun() throws Exception {
+        List<List<String>> sequences = new ArrayList<List<String>>();
+        for (int i = 0; i < 1000; i++) {
+            sequences.add(i % 2 == 0 ? Arrays.asList("b", "a", "b") : Arrays.asList("b", "a"));
+        }
+
+        StateMachineSimulator simulator = new StateMachineSimulator(definition, executor, 4);
+        simulator.setChunkSize(7);
+        simulator.setCountVisits(true);
+        StateMachineSimulator.Result result = simulator.run(sequences);
+
+        assertEquals(1000, result.size());
+        assertSame(stateB, result.getFinalState(0));
+        assertSame(stateA, result.getFinalState(1));
+        assertTrue(result.isSuccess(0));
+        assertFalse(result.isSuccess(1));
+        assertEquals(500, result.getSuccessCount());
+        assertEquals(500, result.getFinalStateCount(stateA));
+        assertEquals(500, result.getFinalStateCount(stateB));
+
+        // 1000 starts + 500 * 1 + 500 * 1
+        assertEquals(2000, result.getVisitCount(stateA));
+        assertEquals(1500, result.getVisitCount(stateB));
+    }
+
+    public void testRunFromInstances() throws Exception {
+        List<StateMachineInstance> instances = new ArrayList<StateMachineInstance>();
+        List<List<String>> sequences = new ArrayList<List<String>>();
+        for (int i = 0; i < 100; i++) {
+            StateMachineInstance instance = definition.newInstance();
+            instance.start();
+            if (i % 2 == 0) {
+                instance.input("b");
+            }
+            instances.add(instance);
+            sequences.add(Arrays.asList("a"));
+        }
+
+        StateMachineSimulator simulator = new StateMachineSimulator(definition, executor, 4);
+        simulator.setChunkSize(3);
+        StateMachineSimulator.Result result = simulator.run(instances, sequences);
+
+        // instances in b go back to a, instances in a stay there
+        assertEquals(100, result.getFinalStateCount(stateA));
+        assertSame(stateB, instances.get(0).getCurrentState());
+    }
+
+    public void testRunFromWrongInstances() throws Exception {
+        List<List<String>> sequences = new ArrayList<List<String>>();
+        sequences.add(Arrays.asList("b"));
+        StateMachineSimulator simulator = new StateMachineSimulator(definition, executor);
+
+        try {
+            simulator.run(Arrays.asList(definition.newInstance()), sequences);
+            fail("Instance is not started.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        try {
+            simulator.run(new ArrayList<StateMachineInstance>(), sequences);
+            fail("Number of instances is different.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+
+    public void testRunEmpty() throws Exception {
+        StateMachineSimulator.Result result = new StateMachineSimulator(definition, executor)
+                .run(new ArrayList<List<String>>());
+        assertEquals(0, result.size());
+        assertFalse(result.hasVisitCounts());
+        try {
+            result.getVisitCount(stateA);
+            fail("Visits are available when not counted.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testFailedSequence() throws Exception {
+        Iterable<Serializable> failing = new Iterable<Serializable>() {
+            public Iterator<Serializable> iterator() {
+                throw new UnsupportedOperationException("test");
+            }
+        };
+        List<Iterable<Serializable>> sequences = new ArrayList<Iterable<Serializable>>();
+        sequences.add(failing);
+
+        try {
+            new StateMachineSimulator(definition, executor).run(sequences);
+            fail("Sequence error is not rethrown.");
+        }
+        catch (UnsupportedOperationException e) {
+            // it is OK
+        }
+    }
+
+    public void testWrongChunkSize() {
+        try {
+            new StateMachineSimulator(definition, executor).setChunkSize(0);
+            fail("Zero chunk size is set.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateMachineSnapshotTestCase extends BaseTestCase {
+
+    StateMachineDefinition definition;
+
+    public void setUp() {
+        definition = createMachine("b").createDefinition();
+    }
+
+    private static StateMachine createMachine(Serializable condition) {
+        return createMachine(new EqualsCondition(condition));
+    }
+
+    private static StateMachine createMachine(TransitionCondition condition) {
+        StateMachine machine = new StateMachine();
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(condition));
+        machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+        machine.addAcceptableState(stateB);
+        return machine;
+    }
+
+    public void testFingerprint() {
+        assertEquals(definition.getFingerprint(), createMachine("b").createDefinition().getFingerprint());
+        assertFalse(definition.getFingerprint() == createMachine("c").createDefinition().getFingerprint());
+    }
+
+    public void testFingerprintValueTypes() {
+        long intFingerprint = createMachine(5).createDefinition().getFingerprint();
+        assertEquals(intFingerprint, createMachine(5).createDefinition().getFingerprint());
+        assertFalse(intFingerprint == createMachine(5L).createDefinition().getFingerprint());
+        assertFalse(intFingerprint == createMachine((short) 5).createDefinition().getFingerprint());
+    }
+
+    public void testFingerprintConditionParameters() {
+        long fingerprint = createMachine(new RangeCondition(0, 10)).createDefinition().getFingerprint();
+        assertEquals(fingerprint, createMachine(new RangeCondition(0, 10)).createDefinition().getFingerprint());
+        assertFalse(fingerprint == createMachine(new RangeCondition(10, 20)).createDefinition().getFingerprint());
+        assertFalse(fingerprint == createMachine(new RangeCondition(0, true, 10, true))
+                .createDefinition().getFingerprint());
+
+        // custom condition with value hash code
+        assertFalse(createMachine(new ModuloCondition(2)).createDefinition().getFingerprint()
+                == createMachine(new ModuloCondition(3)).createDefinition().getFingerprint());
+    }
+
+    static class ModuloCondition implements TransitionCondition {
+
+        private final int divisor;
+
+        ModuloCondition(int divisor) {
+            this.divisor = divisor;
+        }
+
+        public boolean match(Serializable value) {
+            return value instanceof Integer && (Integer) value % divisor == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return divisor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ModuloCondition && ((ModuloCondition) o).divisor == divisor;
+        }
+    }
+
+    public void testSnapshotAndRestore() {
+        StateMachineInstance instance = definition.newInstance();
+        instance.start();
+        instance.input("b");
+
+        byte[] bytes = StateMachineSnapshot.of(instance).toByteArray();
+        assertEquals(9, bytes.length);
+
+        StateMachineInstance restored = StateMachineSnapshot.fromByteArray(bytes).restore(definition);
+        assertTrue(restored.isInState("b"));
+        assertTrue(restored.isInProgress());
+        assertTrue(restored.input("a").getState().equals("a"));
+
+        instance.finish();
+        restored = StateMachineSnapshot.fromByteArray(
+                StateMachineSnapshot.of(instance).toByteArray()).restore(definition);
+        assertFalse(restored.isInProgress());
+        assertEquals("b", restored.getFinishState().getState());
+    }
+
+    public void testNotStarted() {
+        StateMachineSnapshot snapshot = StateMachineSnapshot.of(definition.newInstance());
+        assertEquals(-1, snapshot.getStateIndex());
+
+        StateMachineInstance restored = StateMachineSnapshot.fromByteArray(snapshot.toByteArray()).restore(definition);
+        assertNull(restored.getCurrentState());
+        assertFalse(restored.isInProgress());
+    }
+
+    public void testStore() {
+        StateMachineStore store = definition.newStore(1);
+        store.start(0);
+        store.input(0, "b");
+
+        StateMachineSnapshot snapshot = StateMachineSnapshot.of(store, 0);
+        StateMachineStore other = definition.newStore(0);
+        snapshot.restore(other, 3);
+
+        assertEquals(4, other.getCapacity());
+        assertEquals("b", other.getCurrentState(3).getState());
+        assertTrue(other.isInProgress(3));
+        assertFalse(other.isStarted(2));
+    }
+
+    public void testExternalizable() throws Exception {
+        StateMachineInstance instance = definition.newInstance();
+        instance.start();
+        StateMachineSnapshot snapshot = StateMachineSnapshot.of(instance);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(snapshot);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(snapshot, in.readObject());
+    }
+
+    public void testRestoreWithOtherDefinition() {
+        StateMachineSnapshot snapshot = StateMachineSnapshot.of(definition.newInstance());
+        try {
+            snapshot.restore(createMachine("c").createDefinition());
+            fail("Snapshot is restored with other definition.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+
+    public void testMalformedSnapshot() {
+        try {
+            StateMachineSnapshot.fromByteArray(new byte[]{1, 2, 3});
+            fail("Malformed snapshot is read.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+}
@@ -2,7 +2,16 @@ package com.khmelyuk.core.state.machine;
 
 import junit.framework.TestCase;
 
+import com.khmelyuk.core.state.machine.conditions.ElseCondition;
 import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.RangeCondition;
+import com.khmelyuk.core.state.machine.conditions.TransitionCondition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * @author Ruslan Khmelyuk
@@ -42,4 +51,251 @@ public class StateMachineTestCase extends TestCase {
         assertTrue(machine.isSuccess());
         assertTrue((Integer)machine.getFinishState().getState() == 45);
     }
+
+    public void testElseTransitionIsLast() {
+        StateMachine machine = new StateMachine();
+
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        State stateC = machine.addState(new State("c"));
+        State stateD = machine.addState(new State("d"));
+
+        machine.addTransition(stateA, stateD, new Transition(new ElseCondition()));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateA, stateC, new Transition(new EqualsCondition("c")));
+        machine.addTransition(stateB, stateA, new Transition(new ElseCondition()));
+        machine.addTransition(stateC, stateA, new Transition(new ElseCondition()));
+        machine.setInitialState(stateA);
+
+        machine.start();
+        assertSame(stateC, machine.input("c"));
+        assertSame(stateA, machine.input("x"));
+        assertSame(stateB, machine.input("b"));
+        assertSame(stateA, machine.input("x"));
+        assertSame(stateD, machine.input("x"));
+        assertSame(stateD, machine.input("x"));
+    }
+
+    public void testCompile() {
+        StateMachine machine = new StateMachine();
+
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.setInitialState(stateA);
+
+        assertFalse(machine.isCompiled());
+        machine.compile();
+        assertTrue(machine.isCompiled());
+
+        try {
+            machine.addState(new State("c"));
+            fail("Added state to compiled state machine.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+
+        try {
+            machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+            fail("Added transition to compiled state machine.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+
+        machine.start();
+        assertSame(stateA, machine.input("a"));
+        assertSame(stateB, machine.input("b"));
+    }
+
+    public void testInputBeforeStart() {
+        StateMachine machine = new StateMachine();
+        machine.setInitialState(machine.addState(new State("a")));
+
+        assertNull(machine.input("a"));
+    }
+
+    public void testIndexedEqualsTransitions() {
+        StateMachine machine = new StateMachine();
+
+        State start = machine.addState(new State("start"));
+        State numbers = machine.addState(new State("numbers"));
+        State other = machine.addState(new State("other"));
+
+        machine.addTransition(start, numbers, new Transition(new TransitionCondition() {
+            public boolean match(Serializable value) {
+                return value instanceof Integer && (Integer) value < 3;
+            }
+        }));
+        for (int i = 0; i < TransitionTable.MIN_INDEXED_CONDITIONS * 2; i++) {
+            State state = machine.addState(new State("state" + i));
+            machine.addTransition(start, state, new Transition(new EqualsCondition(i)));
+            machine.addTransition(state, start, new Transition(new ElseCondition()));
+        }
+        machine.addTransition(start, other, new Transition(new ElseCondition()));
+        machine.addTransition(numbers, start, new Transition(new ElseCondition()));
+        machine.setInitialState(start);
+        machine.compile();
+        machine.start();
+
+        assertSame(numbers, machine.input(1));
+        assertSame(start, machine.input("back"));
+        assertEquals("state5", machine.input(5).getState());
+        assertSame(start, machine.input("back"));
+        assertSame(other, machine.input("x"));
+    }
+
+    public void testIndexedRangeTransitions() {
+        StateMachine machine = new StateMachine();
+
+        State start = machine.addState(new State("start"));
+        State low = machine.addState(new State("low"));
+        State normal = machine.addState(new State("normal"));
+        State high = machine.addState(new State("high"));
+        State critical = machine.addState(new State("critical"));
+        State zero = machine.addState(new State("zero"));
+        State other = machine.addState(new State("other"));
+
+        machine.addTransition(start, zero, new Transition(new RangeCondition(0, true, 0, true)));
+        machine.addTransition(start, low, new Transition(new RangeCondition(Double.NEGATIVE_INFINITY, 10)));
+        machine.addTransition(start, normal, new Transition(new RangeCondition(10, 20)));
+        machine.addTransition(start, high, new Transition(new RangeCondition(20, false, 30, true)));
+        // overlaps with high, but goes later
+        machine.addTransition(start, critical, new Transition(new RangeCondition(25, true, Double.POSITIVE_INFINITY, false)));
+        machine.addTransition(start, other, new Transition(new ElseCondition()));
+        for (State each : Arrays.asList(low, normal, high, critical, zero, other)) {
+            machine.addTransition(each, start, new Transition(new EqualsCondition("back")));
+        }
+        machine.setInitialState(start);
+        machine.compile();
+        machine.start();
+
+        Object[][] expectations = {
+                {-5, low}, {-0.0, zero}, {0L, zero}, {9.99, low}, {10, normal}, {19.5f, normal},
+                {20, other}, {20.5, high}, {25, high}, {30, high}, {30.1, critical},
+                {Double.POSITIVE_INFINITY, other}, {Double.NaN, other}, {"text", other}
+        };
+        for (Object[] each : expectations) {
+            assertSame("Input " + each[0], each[1], machine.input((Serializable) each[0]));
+            assertSame(start, machine.input("back"));
+        }
+    }
+
+    public void testInputAll() {
+        StateMachine machine = createCounterMachine();
+        final List<String> changes = new ArrayList<String>();
+        machine.addStateChangeListener(new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                changes.add(fromState.getState() + "-" + toState.getState());
+            }
+        });
+        machine.start();
+
+        State state = machine.inputAll(Arrays.asList("next", "next", "other", "next"));
+        assertEquals(3, state.getState());
+        assertEquals(Arrays.asList("0-1", "1-2", "2-3"), changes);
+
+        changes.clear();
+        state = machine.inputAll(Arrays.asList("next", "next"), InputOption.NOTIFY_ONCE);
+        assertEquals(5, state.getState());
+        assertEquals(Arrays.asList("3-5"), changes);
+    }
+
+    public void testInputAllStopOnAcceptable() {
+        StateMachine machine = createCounterMachine();
+        machine.addAcceptableState(new State(2));
+        machine.start();
+
+        Iterator<String> inputs = Arrays.asList("next", "next", "next", "next").iterator();
+        State state = machine.inputAll(inputs, InputOption.STOP_ON_ACCEPTABLE);
+        assertEquals(2, state.getState());
+        assertTrue(machine.isSuccess());
+        assertTrue(inputs.hasNext());
+    }
+
+    public void testInputAllStopOnFinal() {
+        StateMachine machine = createCounterMachine();
+        machine.start();
+
+        Iterator<String> inputs = Arrays.asList("next", "next", "next", "next", "next", "next").iterator();
+        State state = machine.inputAll(inputs, InputOption.STOP_ON_FINAL);
+        assertEquals(5, state.getState());
+        assertTrue(inputs.hasNext());
+        inputs.next();
+        assertFalse(inputs.hasNext());
+    }
+
+    private static StateMachine createCounterMachine() {
+        StateMachine machine = new StateMachine();
+
+        State previous = machine.addState(new State(0));
+        machine.setInitialState(previous);
+        for (int i = 1; i <= 5; i++) {
+            State state = machine.addState(new State(i));
+            machine.addTransition(previous, state, new Transition(new EqualsCondition("next")));
+            previous = state;
+        }
+        return machine;
+    }
+
+    public void testScopedListeners() {
+        StateMachine machine = new StateMachine();
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        State stateC = machine.addState(new State("c"));
+        Transition toB = machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateA, stateC, new Transition(new EqualsCondition("c")));
+        machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.addTransition(stateC, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+
+        final List<String> changes = new ArrayList<String>();
+        machine.addStateChangeListener(createListener("all", changes));
+        machine.addStateExitListener(stateA, createListener("exitA", changes));
+        machine.addStateEnterListener(stateC, createListener("enterC", changes));
+        machine.addTransitionListener(toB, createListener("toB", changes));
+
+        machine.start();
+        machine.input("b");
+        assertEquals(Arrays.asList("all:a-b", "exitA:a-b", "toB:a-b"), changes);
+
+        changes.clear();
+        machine.input("a");
+        assertEquals(Arrays.asList("all:b-a"), changes);
+
+        changes.clear();
+        machine.input("c");
+        assertEquals(Arrays.asList("all:a-c", "exitA:a-c", "enterC:a-c"), changes);
+
+        changes.clear();
+        machine.inputAll(Arrays.asList("a", "b"), InputOption.NOTIFY_ONCE);
+        assertEquals(Arrays.asList("all:c-b"), changes);
+    }
+
+    public void testAddListenerForWrongState() {
+        StateMachine machine = new StateMachine();
+        try {
+            machine.addStateEnterListener(new State("x"), createListener("x", new ArrayList<String>()));
+            fail("Listener for wrong state is added.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        try {
+            machine.addTransitionListener(new Transition(new ElseCondition()), createListener("x", new ArrayList<String>()));
+            fail("Listener for wrong transition is added.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+
+    private static StateChangeListener createListener(final String name, final List<String> changes) {
+        return new StateChangeListener() {
+            public void onChange(State fromState, State toState) {
+                changes.add(name + ":" + fromState.getState() + "-" + toState.getState());
+            }
+        };
+    }
 }
@@ -0,0 +1,112 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+import com.khmelyuk.core.state.machine.conditions.TimeoutCondition;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class StateTimeoutSchedulerTestCase extends BaseTestCase {
+
+    long now;
+    StateTimeoutScheduler scheduler;
+    StateMachineDefinition definition;
+
+    public void setUp() {
+        now = 0;
+        scheduler = new StateTimeoutScheduler(10) {
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+
+        StateMachine machine = new StateMachine();
+        State pending = machine.addState(new State("pending"));
+        State expired = machine.addState(new State("expired"));
+        State done = machine.addState(new State("done"));
+        machine.addTransition(pending, expired, new Transition(new TimeoutCondition(100)));
+        machine.addTransition(pending, expired, new Transition(new TimeoutCondition(500)));
+        machine.addTransition(pending, done, new Transition(new EqualsCondition("done")));
+        machine.addTransition(done, pending, new Transition(new EqualsCondition("retry")));
+        machine.setInitialState(pending);
+        definition = machine.createDefinition();
+    }
+
+    public void testTimeout() {
+        StateMachineInstance instance = definition.newInstance();
+        scheduler.start(instance);
+        assertEquals(1, scheduler.size());
+
+        now = 90;
+        assertEquals(0, scheduler.advance());
+        assertTrue(instance.isInState("pending"));
+
+        now = 100;
+        assertEquals(1, scheduler.advance());
+        assertTrue(instance.isInState("expired"));
+        assertEquals(0, scheduler.size());
+    }
+
+    public void testCancelOnStateChange() {
+        StateMachineInstance instance = definition.newInstance();
+        scheduler.start(instance);
+
+        now = 50;
+        scheduler.input(instance, "done");
+        assertEquals(0, scheduler.size());
+
+        now = 60;
+        scheduler.input(instance, "retry");
+        assertEquals(1, scheduler.size());
+
+        now = 150;
+        assertEquals(0, scheduler.advance());
+        assertTrue(instance.isInState("pending"));
+
+        now = 160;
+        assertEquals(1, scheduler.advance());
+        assertTrue(instance.isInState("expired"));
+    }
+
+    public void testCancel() {
+        StateMachineInstance instance = definition.newInstance();
+        scheduler.start(instance);
+
+        assertTrue(scheduler.cancel(instance));
+        assertFalse(scheduler.cancel(instance));
+
+        now = 1000;
+        assertEquals(0, scheduler.advance());
+        assertTrue(instance.isInState("pending"));
+    }
+
+    public void testStateChangedOutsideScheduler() {
+        StateMachine machine = new StateMachine();
+        State pending = machine.addState(new State("pending"));
+        State done = machine.addState(new State("done"));
+        State failed = machine.addState(new State("failed"));
+        machine.addTransition(pending, failed, new Transition(new TimeoutCondition(100)));
+        machine.addTransition(pending, done, new Transition(new EqualsCondition("done")));
+        // matches null input only
+        machine.addTransition(done, failed, new Transition(new EqualsCondition(null)));
+        machine.setInitialState(pending);
+
+        StateMachineInstance instance = machine.createDefinition().newInstance();
+        scheduler.start(instance);
+        instance.input("done");
+
+        now = 100;
+        assertEquals(1, scheduler.advance());
+        assertTrue(instance.isInState("done"));
+        assertEquals(0, scheduler.size());
+    }
+
+    public void testTimeoutConditionMatchesOnlyItself() {
+        TimeoutCondition condition = new TimeoutCondition(100);
+        assertTrue(condition.match(condition));
+        assertFalse(condition.match(new TimeoutCondition(100)));
+        assertFalse(condition.match(100L));
+    }
+}
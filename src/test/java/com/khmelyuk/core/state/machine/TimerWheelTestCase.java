@@ -0,0 +1,99 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.fp.Procedure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class TimerWheelTestCase extends BaseTestCase {
+
+    List<Long> expired;
+    Procedure<Long> procedure;
+
+    public void setUp() {
+        expired = new ArrayList<Long>();
+        procedure = new Procedure<Long>() {
+            public void run(Long value) {
+                expired.add(value);
+            }
+        };
+    }
+
+    public void testExpire() {
+        TimerWheel<Long> wheel = new TimerWheel<Long>(10, 1000);
+        wheel.schedule(1050L, 1050);
+        wheel.schedule(1015L, 1015);
+        assertEquals(2, wheel.size());
+
+        assertEquals(0, wheel.advance(1010, procedure));
+        assertEquals(1, wheel.advance(1020, procedure));
+        assertEquals(1015L, (long) expired.get(0));
+        assertEquals(0, wheel.advance(1049, procedure));
+        assertEquals(1, wheel.advance(1050, procedure));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCancel() {
+        TimerWheel<Long> wheel = new TimerWheel<Long>(1, 0);
+        TimerWheel.Timer<Long> timer = wheel.schedule(5L, 5);
+        wheel.schedule(6L, 6);
+
+        assertTrue(timer.isScheduled());
+        assertTrue(timer.cancel());
+        assertFalse(timer.isScheduled());
+        assertFalse(timer.cancel());
+        assertEquals(1, wheel.size());
+
+        assertEquals(1, wheel.advance(10, procedure));
+        assertEquals(6L, (long) expired.get(0));
+    }
+
+    public void testPassedDeadline() {
+        TimerWheel<Long> wheel = new TimerWheel<Long>(1, 0);
+        wheel.advance(100, procedure);
+        wheel.schedule(50L, 50);
+
+        assertEquals(0, wheel.advance(100, procedure));
+        assertEquals(1, wheel.advance(101, procedure));
+    }
+
+    public void testManyTimers() {
+        TimerWheel<Long> wheel = new TimerWheel<Long>(1, 0);
+        Random random = new Random(17);
+        int count = 0;
+        for (int i = 0; i < 2000; i++) {
+            long deadline = (i % 3 == 0 ? random.nextInt(300) : random.nextInt(200000));
+            wheel.schedule(deadline, deadline);
+            count++;
+        }
+
+        final long[] now = new long[1];
+        Procedure<Long> checkDeadline = new Procedure<Long>() {
+            public void run(Long deadline) {
+                assertTrue(deadline <= now[0]);
+                assertTrue(deadline > now[0] - 50);
+                expired.add(deadline);
+            }
+        };
+        for (now[0] = 0; now[0] <= 200000; now[0] += 50) {
+            wheel.advance(now[0], checkDeadline);
+        }
+        assertEquals(count, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testFarDeadline() {
+        TimerWheel<Long> wheel = new TimerWheel<Long>(1, 0);
+        long deadline = (1L << 33);
+        wheel.schedule(deadline, deadline);
+
+        assertEquals(0, wheel.advance(deadline - 1, procedure));
+        assertEquals(1, wheel.advance(deadline, procedure));
+    }
+}
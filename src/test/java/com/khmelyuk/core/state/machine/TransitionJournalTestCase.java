@@ -0,0 +1,154 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class TransitionJournalTestCase extends BaseTestCase {
+
+    File directory;
+    StateMachineDefinition definition;
+
+    public void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+
+        StateMachine machine = new StateMachine();
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        State stateC = machine.addState(new State("c"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateB, stateC, new Transition(new EqualsCondition("c")));
+        machine.addTransition(stateC, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+        definition = machine.createDefinition();
+    }
+
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testAppendAndReplay() throws Exception {
+        TransitionJournal journal = new TransitionJournal(directory, definition, 2);
+        StateMachineInstance first = definition.newInstance();
+        StateMachineInstance second = definition.newInstance();
+        first.start();
+        second.start();
+
+        journal.input(1, first, "b");
+        journal.input(2, second, "b");
+        journal.input(1, first, "x");
+        journal.input(1, first, "c");
+        journal.input(2, second, "c");
+        journal.input(2, second, "a");
+        journal.close();
+
+        assertEquals(3, directory.listFiles().length);
+
+        final List<String> records = new ArrayList<String>();
+        long count = TransitionJournal.replay(directory, definition, new TransitionJournal.RecordHandler() {
+            public void onRecord(long instanceId, int fromState, int toState, int transition, long timestamp) {
+                records.add(instanceId + ":" + fromState + "-" + toState + "/" + transition);
+                assertTrue(timestamp > 0);
+            }
+        });
+        assertEquals(5, count);
+        assertEquals("1:0-1/0", records.get(0));
+        assertEquals("2:0-1/0", records.get(1));
+        assertEquals("1:1-2/1", records.get(2));
+        assertEquals("2:1-2/1", records.get(3));
+        assertEquals("2:2-0/2", records.get(4));
+    }
+
+    public void testRecover() throws Exception {
+        TransitionJournal journal = new TransitionJournal(directory, definition, 100);
+        journal.append(0, 0, 1, 0, 10);
+        journal.append(3, 0, 1, 0, 11);
+        journal.append(3, 1, 2, 1, 12);
+        journal.close();
+
+        // journal opened again continues in the new segment
+        journal = new TransitionJournal(directory, definition, 100);
+        journal.append(0, 1, 2, 1, 13);
+        journal.close();
+
+        Map<Long, StateMachineInstance> instances = TransitionJournal.recover(directory, definition);
+        assertEquals(2, instances.size());
+        assertTrue(instances.get(0L).isInState("c"));
+        assertTrue(instances.get(3L).isInState("c"));
+        assertTrue(instances.get(3L).isInProgress());
+
+        StateMachineStore store = definition.newStore(1);
+        TransitionJournal.recover(directory, store);
+        assertEquals(4, store.getCapacity());
+        assertEquals("c", store.getCurrentState(0).getState());
+        assertEquals("c", store.getCurrentState(3).getState());
+        assertFalse(store.isStarted(1));
+    }
+
+    public void testRecoverWithOtherDefinition() throws Exception {
+        TransitionJournal journal = new TransitionJournal(directory, definition, 10);
+        journal.append(0, 0, 1, 0, 10);
+        journal.close();
+
+        StateMachine machine = new StateMachine();
+        State stateA = machine.addState(new State("a"));
+        State stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.setInitialState(stateA);
+        StateMachineDefinition other = machine.createDefinition();
+
+        try {
+            TransitionJournal.recover(directory, other);
+            fail("Journal is recovered with other definition.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+        try {
+            TransitionJournal.recover(directory, other.newStore(1));
+            fail("Journal is recovered with other definition.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+        try {
+            journal = new TransitionJournal(directory, definition, 10);
+            journal.input(0, other.newInstance(), "b");
+            fail("Instance of other definition is journaled.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        finally {
+            journal.close();
+        }
+        assertEquals(1, TransitionJournal.recover(directory, definition).size());
+    }
+
+    public void testAppendToClosedJournal() throws Exception {
+        TransitionJournal journal = new TransitionJournal(directory, definition, 10);
+        journal.close();
+        try {
+            journal.append(0, 0, 1, 0, 10);
+            fail("Record is added to the closed journal.");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.khmelyuk.core.state.machine;
+
+import com.khmelyuk.core.BaseTestCase;
+import com.khmelyuk.core.fp.Procedure;
+import com.khmelyuk.core.state.machine.conditions.EqualsCondition;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class TransitionTraceTestCase extends BaseTestCase {
+
+    StateMachine machine;
+    State stateA;
+    State stateB;
+
+    public void setUp() {
+        machine = new StateMachine();
+        stateA = machine.addState(new State("a"));
+        stateB = machine.addState(new State("b"));
+        machine.addTransition(stateA, stateB, new Transition(new EqualsCondition("b")));
+        machine.addTransition(stateB, stateA, new Transition(new EqualsCondition("a")));
+        machine.setInitialState(stateA);
+        machine.addAcceptableState(stateB);
+    }
+
+    public void testTrace() {
+        TransitionTrace trace = machine.enableTrace(3);
+        assertEquals(4, trace.getCapacity());
+        assertSame(trace, machine.getTrace());
+
+        machine.start();
+        machine.input("b");
+        machine.input("x");
+        machine.input("a");
+
+        List<TransitionTrace.Record> records = trace.getRecords();
+        assertEquals(2, records.size());
+        assertSame(stateA, records.get(0).getFrom());
+        assertSame(stateB, records.get(0).getTo());
+        assertEquals("b".hashCode(), records.get(0).getInputHash());
+        assertSame(stateA, records.get(1).getTo());
+        assertTrue(records.get(0).getTime() <= records.get(1).getTime());
+        assertTrue(trace.dump().contains("a -> b"));
+    }
+
+    public void testTraceKeepsLastRecords() {
+        TransitionTrace trace = machine.enableTrace(2);
+        machine.start();
+        machine.inputAll(Arrays.asList("b", "a", "b", "a", "b"));
+
+        assertEquals(5, trace.getCount());
+        List<TransitionTrace.Record> records = trace.getRecords();
+        assertEquals(2, records.size());
+        assertSame(stateB, records.get(0).getFrom());
+        assertSame(stateB, records.get(1).getTo());
+    }
+
+    public void testFailureHandler() {
+        final TransitionTrace[] failed = new TransitionTrace[1];
+        machine.enableTrace(4, new Procedure<TransitionTrace>() {
+            public void run(TransitionTrace value) {
+                failed[0] = value;
+            }
+        });
+
+        machine.start();
+        machine.input("b");
+        machine.input("a");
+        machine.finish();
+
+        assertSame(machine.getTrace(), failed[0]);
+        assertEquals(2, failed[0].getRecords().size());
+    }
+
+    public void testWrongCapacity() {
+        try {
+            machine.enableTrace(0);
+            fail("Trace with zero capacity is created.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.khmelyuk.core.state.machine.conditions;
+
+import com.khmelyuk.core.BaseTestCase;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class RangeConditionTestCase extends BaseTestCase {
+
+    public void testMatch() {
+        RangeCondition condition = new RangeCondition(10, 20);
+        assertTrue(condition.match(10));
+        assertTrue(condition.match(15L));
+        assertTrue(condition.match(19.99));
+        assertFalse(condition.match(20));
+        assertFalse(condition.match(9));
+        assertFalse(condition.match("15"));
+        assertFalse(condition.match(null));
+        assertFalse(condition.match(Double.NaN));
+    }
+
+    public void testInclusiveBounds() {
+        RangeCondition condition = new RangeCondition(10, false, 20, true);
+        assertFalse(condition.match(10));
+        assertTrue(condition.match(20));
+        assertFalse(condition.isLowerInclusive());
+        assertTrue(condition.isUpperInclusive());
+    }
+
+    public void testWrongBounds() {
+        try {
+            new RangeCondition(20, 10);
+            fail("Range with lower bound greater than upper is created.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+        try {
+            new RangeCondition(Double.NaN, 10);
+            fail("Range with NaN bound is created.");
+        }
+        catch (IllegalArgumentException e) {
+            // it is OK
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2008-2012 Ruslan Khmelyuk.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.khmelyuk.core.utils;
+
+import com.khmelyuk.core.BaseTestCase;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Ruslan Khmelyuk
+ * @since 1.1.3
+ */
+public class ConcurrentUtilsTestCase extends BaseTestCase {
+
+    ExecutorService executor;
+
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    public void testProcessChunks() throws Exception {
+        final int[] values = new int[1000];
+        List<int[]> results = ConcurrentUtils.processChunks(executor, 4, values.length, 7,
+                new ConcurrentUtils.ChunkProcessor<int[]>() {
+                    public int[] createResult() {
+                        return new int[1];
+                    }
+
+                    public void process(int start, int end, int[] result) {
+                        for (int i = start; i < end; i++) {
+                            values[i]++;
+                            result[0]++;
+                        }
+                    }
+                });
+
+        assertEquals(4, results.size());
+        int processed = 0;
+        for (int[] each : results) {
+            processed += each[0];
+        }
+        assertEquals(values.length, processed);
+        for (int each : values) {
+            assertEquals(1, each);
+        }
+    }
+
+    public void testProcessChunksWithFewChunks() throws Exception {
+        List<Object> results = ConcurrentUtils.processChunks(executor, 4, 10, 10,
+                new ConcurrentUtils.ChunkProcessor<Object>() {
+                    public Object createResult() {
+                        return null;
+                    }
+
+                    public void process(int start, int end, Object result) {
+                    }
+                });
+        assertEquals(1, results.size());
+    }
+
+    public void testProcessChunksFailure() throws Exception {
+        try {
+            ConcurrentUtils.processChunks(executor, 4, 100, 10, new ConcurrentUtils.ChunkProcessor<Object>() {
+                public Object createResult() {
+                    return null;
+                }
+
+                public void process(int start, int end, Object result) {
+                    if (start == 50) {
+                        throw new IllegalStateException("fail");
+                    }
+                }
+            });
+            fail("Processor failed");
+        }
+        catch (IllegalStateException e) {
+            // it is OK
+        }
+    }
+}